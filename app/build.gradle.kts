@@ -41,6 +41,10 @@ android {
         viewBinding = true
         dataBinding = true
     }
+    androidResources {
+        // The timetable asset is memory-mapped through openFd, which needs it uncompressed
+        noCompress += "trtt"
+    }
     packaging {
         resources {
             excludes += setOf(
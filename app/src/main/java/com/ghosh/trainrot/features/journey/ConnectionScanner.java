@@ -0,0 +1,433 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.nio.IntBuffer;
+import java.util.*;
+
+// Transfer-bounded Connection Scan over the timetable's departure-sorted
+// elementary connections (one train hop between two consecutive stops).
+public class ConnectionScanner {
+    public static final int UNREACHED = Integer.MAX_VALUE;
+
+    private final TimetableStore store;
+
+    public ConnectionScanner(TimetableStore store) {
+        this.store = store;
+    }
+
+    public TimetableStore getStore() {
+        return store;
+    }
+
+    public ScanResult scan(int source, int target, int departureTime,
+                           int maxLegs, int minTransferTime) {
+        return scan(source, target, departureTime, maxLegs,
+            SearchConstraints.withMinTransfer(minTransferTime));
+    }
+
+    public ScanResult scan(int source, int target, int departureTime,
+                           int maxLegs, SearchConstraints constraints) {
+        return scan(source, target, departureTime, UNREACHED, maxLegs, constraints);
+    }
+
+    // One-to-all when target is negative; connections arriving after
+    // latestArrival are ignored, which ends the sweep at that time
+    public ScanResult scan(int source, int target, int departureTime, int latestArrival,
+                           int maxLegs, SearchConstraints constraints) {
+        if (constraints.getMaxTransferTime() != SearchConstraints.NO_LIMIT) {
+            return scanWithTransferWindow(source, target, departureTime, latestArrival, maxLegs,
+                constraints);
+        }
+        int stations = store.getStationCount();
+        int connections = store.getConnectionCount();
+        IntBuffer departureStations = store.connectionDepartureStation;
+        IntBuffer arrivalStations = store.connectionArrivalStation;
+        IntBuffer departureTimes = store.connectionDepartureTime;
+        IntBuffer arrivalTimes = store.connectionArrivalTime;
+        IntBuffer trips = store.connectionTrip;
+        int[][] arrival = new int[maxLegs + 1][stations];
+        int[][] enterConnection = new int[maxLegs + 1][stations];
+        int[][] exitConnection = new int[maxLegs + 1][stations];
+        for (int k = 0; k <= maxLegs; k++) {
+            Arrays.fill(arrival[k], UNREACHED);
+        }
+        for (int k = 0; k <= maxLegs; k++) {
+            arrival[k][source] = departureTime;
+            enterConnection[k][source] = -1;
+        }
+
+        int[] tripLegs = new int[store.getTrainCount()];
+        int[] tripEnter = new int[store.getTrainCount()];
+        Arrays.fill(tripLegs, UNREACHED);
+
+        for (int i = firstDepartingAt(departureTime); i < connections; i++) {
+            int dep = departureTimes.get(i);
+            // Stop once no leg count can still reach the target sooner; the
+            // single-leg arrival is the latest, so it bounds them all
+            if (dep > latestArrival
+                    || (target >= 0 && dep >= arrival[Math.min(1, maxLegs)][target])) {
+                break;
+            }
+
+            int trip = trips.get(i);
+            if (!constraints.allowsTrain(trip)) {
+                continue;
+            }
+            int from = departureStations.get(i);
+
+            // Board with the fewest legs that can still make this departure
+            for (int k = 0; k < maxLegs && k + 1 < tripLegs[trip]; k++) {
+                int ready = arrival[k][from];
+                if (ready != UNREACHED
+                        && (k == 0 ? ready <= dep : constraints.allowsTransfer(ready, dep))) {
+                    tripLegs[trip] = k + 1;
+                    tripEnter[trip] = i;
+                    break;
+                }
+            }
+
+            int legs = tripLegs[trip];
+            if (legs == UNREACHED) {
+                continue;
+            }
+
+            int to = arrivalStations.get(i);
+            int arr = arrivalTimes.get(i);
+            if (arr > latestArrival) {
+                continue;
+            }
+            for (int k = legs; k <= maxLegs && arr < arrival[k][to]; k++) {
+                arrival[k][to] = arr;
+                enterConnection[k][to] = tripEnter[trip];
+                exitConnection[k][to] = i;
+            }
+        }
+
+        return new ScanResult(source, departureTime, maxLegs,
+            arrival, enterConnection, exitConnection);
+    }
+
+    // With a maximum transfer time the earliest arrival at a station may be
+    // too early for a departure that a later arrival can still make, so every
+    // arrival is kept as an event and boarding takes the latest one that
+    // leaves the minimum transfer time
+    private ScanResult scanWithTransferWindow(int source, int target, int departureTime,
+                                              int latestArrival, int maxLegs,
+                                              SearchConstraints constraints) {
+        int stations = store.getStationCount();
+        int connections = store.getConnectionCount();
+        IntBuffer departureStations = store.connectionDepartureStation;
+        IntBuffer arrivalStations = store.connectionArrivalStation;
+        IntBuffer departureTimes = store.connectionDepartureTime;
+        IntBuffer arrivalTimes = store.connectionArrivalTime;
+        IntBuffer trips = store.connectionTrip;
+        int[][] arrival = new int[maxLegs + 1][stations];
+        int[][] arrivalEvent = new int[maxLegs + 1][stations];
+        for (int k = 0; k <= maxLegs; k++) {
+            Arrays.fill(arrival[k], UNREACHED);
+            arrival[k][source] = departureTime;
+            arrivalEvent[k][source] = -1;
+        }
+        ArrivalEvents events = new ArrivalEvents(stations, maxLegs);
+
+        int[] tripLegs = new int[store.getTrainCount()];
+        int[] tripEnter = new int[store.getTrainCount()];
+        int[] tripParent = new int[store.getTrainCount()];
+        Arrays.fill(tripLegs, UNREACHED);
+
+        for (int i = firstDepartingAt(departureTime); i < connections; i++) {
+            int dep = departureTimes.get(i);
+            // Stop once no leg count can still reach the target sooner; the
+            // single-leg arrival is the latest, so it bounds them all
+            if (dep > latestArrival
+                    || (target >= 0 && dep >= arrival[Math.min(1, maxLegs)][target])) {
+                break;
+            }
+
+            int trip = trips.get(i);
+            if (!constraints.allowsTrain(trip)) {
+                continue;
+            }
+            int from = departureStations.get(i);
+
+            // Board with the fewest legs that can still make this departure;
+            // the first train leaves from the source without a transfer
+            for (int k = 0; k < maxLegs && k + 1 < tripLegs[trip]; k++) {
+                int parent = -1;
+                if (k == 0) {
+                    if (from != source) {
+                        continue;
+                    }
+                } else {
+                    parent = events.latestArrivingBy(k, from, dep - constraints.getMinTransferTime());
+                    if (parent < 0 || !constraints.allowsTransfer(events.arrival[parent], dep)) {
+                        continue;
+                    }
+                }
+                tripLegs[trip] = k + 1;
+                tripEnter[trip] = i;
+                tripParent[trip] = parent;
+                break;
+            }
+
+            int legs = tripLegs[trip];
+            if (legs == UNREACHED) {
+                continue;
+            }
+
+            int to = arrivalStations.get(i);
+            int arr = arrivalTimes.get(i);
+            if (arr > latestArrival) {
+                continue;
+            }
+            int event = events.add(legs, to, arr, tripEnter[trip], i, tripParent[trip],
+                legs < maxLegs);
+            for (int k = legs; k <= maxLegs && arr < arrival[k][to]; k++) {
+                arrival[k][to] = arr;
+                arrivalEvent[k][to] = event;
+            }
+        }
+
+        return new ScanResult(source, departureTime, maxLegs, arrival, arrivalEvent, events);
+    }
+
+    private int firstDepartingAt(int time) {
+        IntBuffer departureTimes = store.connectionDepartureTime;
+        int low = 0;
+        int high = departureTimes.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (departureTimes.get(mid) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public class ScanResult {
+        private final int source;
+        private final int departureTime;
+        private final int maxLegs;
+        private final int[][] arrival;
+        private final int[][] enterConnection;
+        private final int[][] exitConnection;
+        // Windowed scans link journeys through their arrival events instead
+        private final int[][] arrivalEvent;
+        private final ArrivalEvents events;
+
+        ScanResult(int source, int departureTime, int maxLegs, int[][] arrival,
+                   int[][] enterConnection, int[][] exitConnection) {
+            this.source = source;
+            this.departureTime = departureTime;
+            this.maxLegs = maxLegs;
+            this.arrival = arrival;
+            this.enterConnection = enterConnection;
+            this.exitConnection = exitConnection;
+            this.arrivalEvent = null;
+            this.events = null;
+        }
+
+        ScanResult(int source, int departureTime, int maxLegs, int[][] arrival,
+                   int[][] arrivalEvent, ArrivalEvents events) {
+            this.source = source;
+            this.departureTime = departureTime;
+            this.maxLegs = maxLegs;
+            this.arrival = arrival;
+            this.enterConnection = null;
+            this.exitConnection = null;
+            this.arrivalEvent = arrivalEvent;
+            this.events = events;
+        }
+
+        public int getEarliestArrival(int station) {
+            return arrival[maxLegs][station];
+        }
+
+        public int getEarliestArrival(int station, int legs) {
+            return arrival[Math.min(legs, maxLegs)][station];
+        }
+
+        // Fewest legs reaching the station at its earliest arrival, or -1
+        public int getFewestLegs(int station) {
+            int earliest = arrival[maxLegs][station];
+            if (earliest == UNREACHED) {
+                return -1;
+            }
+            int legs = maxLegs;
+            while (legs > 0 && arrival[legs - 1][station] == earliest) {
+                legs--;
+            }
+            return legs;
+        }
+
+        // Pareto set over (arrival, legs): one journey per leg count that
+        // strictly improves on every journey with fewer legs
+        public List<Journey> getJourneys(int target) {
+            List<Journey> journeys = new ArrayList<>();
+            if (target == source) {
+                return journeys;
+            }
+            for (int k = 1; k <= maxLegs; k++) {
+                if (arrival[k][target] < arrival[k - 1][target]) {
+                    journeys.add(reconstruct(target, k));
+                }
+            }
+            return journeys;
+        }
+
+        // Earliest-arriving journey with the fewest legs, or null if unreached
+        public Journey getEarliestJourney(int target) {
+            int legs = getFewestLegs(target);
+            return legs <= 0 ? null : reconstruct(target, legs);
+        }
+
+        private Journey reconstruct(int target, int legs) {
+            if (events != null) {
+                return reconstructFromEvents(arrivalEvent[legs][target]);
+            }
+            int[] enters = new int[legs];
+            int[] exits = new int[legs];
+            int count = 0;
+            int station = target;
+            for (int k = legs; station != source && k > 0; k--) {
+                enters[count] = enterConnection[k][station];
+                exits[count] = exitConnection[k][station];
+                station = store.connectionDepartureStation.get(enters[count]);
+                count++;
+            }
+
+            Journey journey = new Journey(count);
+            for (int i = 0; i < count; i++) {
+                journey.boardStop[i] = store.connectionStop.get(enters[count - 1 - i]);
+                journey.alightStop[i] = store.connectionStop.get(exits[count - 1 - i]) + 1;
+            }
+            return journey;
+        }
+
+        private Journey reconstructFromEvents(int last) {
+            int count = 0;
+            for (int event = last; event >= 0; event = events.parent[event]) {
+                count++;
+            }
+            Journey journey = new Journey(count);
+            int event = last;
+            for (int i = count - 1; i >= 0; i--) {
+                journey.boardStop[i] = store.connectionStop.get(events.enter[event]);
+                journey.alightStop[i] = store.connectionStop.get(events.exit[event]) + 1;
+                event = events.parent[event];
+            }
+            return journey;
+        }
+
+        public int getDepartureTime() {
+            return departureTime;
+        }
+    }
+
+    // Arrivals of a windowed scan as parallel arrays, each linked to the
+    // arrival its train was boarded from. Per leg count and station the
+    // events that may still be boarded from, fewer than maxLegs, are listed
+    // in arrival order.
+    private static class ArrivalEvents {
+        int[] arrival = new int[256];
+        int[] enter = new int[256];
+        int[] exit = new int[256];
+        int[] parent = new int[256];
+        int size;
+        private final int[][][] listed;
+        private final int[][] listedCounts;
+
+        ArrivalEvents(int stations, int maxLegs) {
+            listed = new int[maxLegs][stations][];
+            listedCounts = new int[maxLegs][stations];
+        }
+
+        // Index of the new event, or of the listed one arriving at the same
+        // time with as many legs, which serves just as well
+        int add(int legs, int station, int time, int enterConnection, int exitConnection,
+                int parentEvent, boolean listable) {
+            int position = -1;
+            if (listable) {
+                int found = latestArrivingBy(legs, station, time);
+                if (found >= 0 && arrival[found] == time) {
+                    return found;
+                }
+                position = insertionPoint(legs, station, time);
+            }
+            if (size == arrival.length) {
+                arrival = Arrays.copyOf(arrival, size * 2);
+                enter = Arrays.copyOf(enter, size * 2);
+                exit = Arrays.copyOf(exit, size * 2);
+                parent = Arrays.copyOf(parent, size * 2);
+            }
+            arrival[size] = time;
+            enter[size] = enterConnection;
+            exit[size] = exitConnection;
+            parent[size] = parentEvent;
+            if (listable) {
+                insert(legs, station, position, size);
+            }
+            return size++;
+        }
+
+        // Latest listed event arriving at or before the time, or -1
+        int latestArrivingBy(int legs, int station, int time) {
+            int position = insertionPoint(legs, station, time);
+            return position == 0 ? -1 : listed[legs][station][position - 1];
+        }
+
+        // Number of listed events arriving at or before the time
+        private int insertionPoint(int legs, int station, int time) {
+            int[] list = listed[legs][station];
+            int low = 0;
+            int high = listedCounts[legs][station];
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (arrival[list[mid]] <= time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private void insert(int legs, int station, int position, int event) {
+            int[] list = listed[legs][station];
+            int count = listedCounts[legs][station];
+            if (list == null) {
+                list = new int[4];
+            } else if (count == list.length) {
+                list = Arrays.copyOf(list, count * 2);
+            }
+            System.arraycopy(list, position, list, position + 1, count - position);
+            list[position] = event;
+            listed[legs][station] = list;
+            listedCounts[legs][station] = count + 1;
+        }
+    }
+
+    // Legs of a journey as (board, alight) stop times on one train
+    public static class Journey {
+        final int[] boardStop;
+        final int[] alightStop;
+
+        Journey(int legs) {
+            this.boardStop = new int[legs];
+            this.alightStop = new int[legs];
+        }
+
+        public int getLegCount() {
+            return boardStop.length;
+        }
+
+        public int getBoardStop(int leg) {
+            return boardStop[leg];
+        }
+
+        public int getAlightStop(int leg) {
+            return alightStop[leg];
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+// A train's most recent delay records as a ring of parallel primitive
+// arrays, 13 bytes a record instead of a DelayRecord object and list node.
+// Reading it back gives DelayRecords built on the fly, oldest first. Stored
+// values are compacted: delays are clamped to a short, the severities
+// (expected in [0, 1]) are quantized to 1/255 and timestamps are kept to
+// the second, relative to the train's first record.
+//
+// It is also the only copy of the history the delay model reads: model
+// input rows are built straight from the ring. The version identifies the
+// records a row was built from; DelayPredictor stamps a new one with each
+// change, and the List methods leave it alone.
+public class DelayHistory extends AbstractList<DelayPredictor.DelayRecord> {
+    static final int FEATURE_COUNT = 8; // model input floats per record
+
+    private static final int WEEKEND = 1;
+    private static final int HOLIDAY = 1 << 1;
+    private static final int TRACK_MAINTENANCE = 1 << 2;
+    private static final int CREW_CHANGE = 1 << 3;
+    private static final int TECHNICAL_ISSUE = 1 << 4;
+    private static final float LEVELS = 255f;
+    private static final float[] LEVEL_VALUES = new float[256]; // dequantize by table
+
+    static {
+        for (int level = 0; level < LEVEL_VALUES.length; level++) {
+            LEVEL_VALUES[level] = level / LEVELS;
+        }
+    }
+
+    private final int trainId;
+    private final short[] delays;
+    private final byte[] flags;
+    private final byte[] weather;
+    private final byte[] congestion;
+    private final int[] stations;
+    private final int[] timestampSeconds; // since baseTimestamp
+    private long baseTimestamp;
+    private int head; // slot of the oldest record
+    private int count;
+    // Written under the lock with the records, so a row is never paired
+    // with a version newer than its input
+    private volatile long version;
+
+    public DelayHistory(int trainId, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid history capacity " + capacity);
+        }
+        this.trainId = trainId;
+        this.delays = new short[capacity];
+        this.flags = new byte[capacity];
+        this.weather = new byte[capacity];
+        this.congestion = new byte[capacity];
+        this.stations = new int[capacity];
+        this.timestampSeconds = new int[capacity];
+    }
+
+    // Appends the record, dropping the oldest once full
+    @Override
+    public synchronized boolean add(DelayPredictor.DelayRecord record) {
+        if (count == 0) {
+            baseTimestamp = record.timestamp;
+        }
+        int capacity = delays.length;
+        int slot = (head + count) % capacity;
+        if (count == capacity) {
+            head = (head + 1) % capacity;
+        } else {
+            count++;
+        }
+
+        delays[slot] = (short) Math.max(Short.MIN_VALUE,
+            Math.min(Short.MAX_VALUE, record.delayMinutes));
+        flags[slot] = (byte) ((record.isWeekend ? WEEKEND : 0)
+            | (record.isHoliday ? HOLIDAY : 0)
+            | (record.trackMaintenance ? TRACK_MAINTENANCE : 0)
+            | (record.crewChange ? CREW_CHANGE : 0)
+            | (record.technicalIssue ? TECHNICAL_ISSUE : 0));
+        weather[slot] = quantize(record.weatherSeverity);
+        congestion[slot] = quantize(record.stationCongestion);
+        stations[slot] = record.station == null ? -1 : IdDictionary.STATIONS.intern(record.station);
+        timestampSeconds[slot] = (int) Math.floorDiv(record.timestamp - baseTimestamp, 1000L);
+        modCount++;
+        return true;
+    }
+
+    // Appends the record and stamps the history with a new version
+    synchronized void add(DelayPredictor.DelayRecord record, long version) {
+        add(record);
+        this.version = version;
+    }
+
+    synchronized void setVersion(long version) {
+        this.version = version;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    // Writes the model input row, oldest record first and zero-padded after
+    // the newest, into row[0, capacity * FEATURE_COUNT), and returns the
+    // version it was built from
+    synchronized long copyFeaturesTo(float[] row) {
+        int capacity = delays.length;
+        int offset = 0;
+        int slot = head;
+        for (int i = 0; i < count; i++) {
+            int flag = flags[slot];
+            row[offset] = delays[slot];
+            row[offset + 1] = flag & WEEKEND;
+            row[offset + 2] = (flag & HOLIDAY) >> 1;
+            row[offset + 3] = LEVEL_VALUES[weather[slot] & 0xFF];
+            row[offset + 4] = LEVEL_VALUES[congestion[slot] & 0xFF];
+            row[offset + 5] = (flag & TRACK_MAINTENANCE) >> 2;
+            row[offset + 6] = (flag & CREW_CHANGE) >> 3;
+            row[offset + 7] = (flag & TECHNICAL_ISSUE) >> 4;
+            offset += FEATURE_COUNT;
+            if (++slot == capacity) {
+                slot = 0;
+            }
+        }
+        Arrays.fill(row, offset, capacity * FEATURE_COUNT, 0.0f);
+        return version;
+    }
+
+    // Whether both histories give the model the same input row
+    synchronized boolean sameFeatures(DelayHistory other) {
+        synchronized (other) {
+            if (count != other.count) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                int slot = (head + i) % delays.length;
+                int otherSlot = (other.head + i) % other.delays.length;
+                if (delays[slot] != other.delays[otherSlot]
+                        || flags[slot] != other.flags[otherSlot]
+                        || weather[slot] != other.weather[otherSlot]
+                        || congestion[slot] != other.congestion[otherSlot]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // The index-th oldest record, as a new DelayRecord
+    @Override
+    public synchronized DelayPredictor.DelayRecord get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + count);
+        }
+        int slot = (head + index) % delays.length;
+        int flag = flags[slot];
+        return new DelayPredictor.DelayRecord(
+            IdDictionary.TRAINS.get(trainId),
+            stations[slot] < 0 ? null : IdDictionary.STATIONS.get(stations[slot]),
+            delays[slot],
+            baseTimestamp + timestampSeconds[slot] * 1000L,
+            (flag & WEEKEND) != 0,
+            (flag & HOLIDAY) != 0,
+            dequantize(weather[slot]),
+            dequantize(congestion[slot]),
+            (flag & TRACK_MAINTENANCE) != 0,
+            (flag & CREW_CHANGE) != 0,
+            (flag & TECHNICAL_ISSUE) != 0
+        );
+    }
+
+    @Override
+    public synchronized int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized void clear() {
+        head = 0;
+        count = 0;
+        modCount++;
+    }
+
+    public int getTrainId() {
+        return trainId;
+    }
+
+    public int getCapacity() {
+        return delays.length;
+    }
+
+    private static byte quantize(float severity) {
+        float clamped = Float.isNaN(severity) ? 0f : Math.max(0f, Math.min(1f, severity));
+        return (byte) Math.round(clamped * LEVELS);
+    }
+
+    private static float dequantize(byte level) {
+        return LEVEL_VALUES[level & 0xFF];
+    }
+}
@@ -5,9 +5,13 @@ import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import org.tensorflow.lite.Interpreter;
 import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -15,59 +19,221 @@ import javax.inject.Singleton;
 public class DelayPredictor {
     private static final String MODEL_FILE = "delay_prediction_model.tflite";
     private static final int SEQUENCE_LENGTH = 24; // Hours of historical data
-    private static final int FEATURE_COUNT = 8; // Number of features per hour
+    private static final int FEATURE_COUNT = DelayHistory.FEATURE_COUNT; // Number of features per hour
+    private static final int ROW_FLOATS = SEQUENCE_LENGTH * FEATURE_COUNT;
+    private static final int MAX_BATCH_SIZE = 64; // a power of two
+    private static final int INTERPRETER_POOL_SIZE =
+        Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final int THREADS_PER_INTERPRETER = 1;
+    private static final int PREDICTION_CACHE_SIZE = 8192;
+    private static final float[] EMPTY_ROW = new float[ROW_FLOATS];
     
-    private final Interpreter tflite;
+    private final InterpreterPool interpreters;
     private final DatabaseReference delayRef;
-    private final Map<String, Queue<DelayRecord>> trainDelayHistory;
+    private final IdTable<DelayHistory> trainDelayHistory; // by train ID, also the model input
+    private final AtomicLong epoch = new AtomicLong(); // bumped whenever the history changes
+    private final PredictionCache predictionCache = new PredictionCache(PREDICTION_CACHE_SIZE);
+    private final ThreadLocal<InferenceBuffers> inferenceBuffers =
+        ThreadLocal.withInitial(InferenceBuffers::new);
 
     @Inject
     public DelayPredictor(Context context) {
-        this.tflite = new Interpreter(loadModelFile(context));
+        this(context, INTERPRETER_POOL_SIZE, THREADS_PER_INTERPRETER);
+    }
+
+    // Up to poolSize predictions run at once, each interpreter on
+    // threadsPerInterpreter threads; all share the one mapped model
+    public DelayPredictor(Context context, int poolSize, int threadsPerInterpreter) {
+        this.interpreters = new InterpreterPool(loadModelFile(context), poolSize,
+            threadsPerInterpreter);
         this.delayRef = FirebaseDatabase.getInstance().getReference("delays");
-        this.trainDelayHistory = new HashMap<>();
+        this.trainDelayHistory = new IdTable<>();
         loadHistoricalData();
     }
 
+    // Predictions made at different epochs may differ; callers caching them
+    // should include the epoch in their key
+    public long getEpoch() {
+        return epoch.get();
+    }
+
+    // The train's last SEQUENCE_LENGTH delay records, oldest first, as a
+    // read-only view of the compact store
+    public List<DelayRecord> getDelayHistory(String trainNumber) {
+        DelayHistory history = trainDelayHistory.get(IdDictionary.TRAINS.find(trainNumber));
+        return history == null
+            ? Collections.emptyList() : Collections.unmodifiableList(history);
+    }
+
+    // Hits, misses and invalidations of repeated train predictions
+    public PredictionCache getPredictionCache() {
+        return predictionCache;
+    }
+
+    // Pool size, checkouts and time spent waiting for a free interpreter
+    public InterpreterPool getInterpreterPool() {
+        return interpreters;
+    }
+
     public int predictDelay(String trainNumber, String station) {
-        // Get historical delay data
-        Queue<DelayRecord> history = trainDelayHistory.getOrDefault(trainNumber, new LinkedList<>());
-        
-        // Prepare input data
-        float[][] inputData = prepareInputData(history, station);
+        return predictDelay(IdDictionary.TRAINS.find(trainNumber),
+            IdDictionary.STATIONS.find(station));
+    }
+
+    // The model input is the train's history alone, so the prediction is the
+    // same at every station and is cached once per train. Fills this thread's
+    // input buffer in place and reads the output straight from the native
+    // buffer, allocating nothing once warm.
+    public int predictDelay(int trainId, int stationId) {
+        DelayHistory history = trainDelayHistory.get(trainId);
+        int cached = predictionCache.get(trainId, versionOf(history));
+        if (cached != PredictionCache.MISS) {
+            return cached;
+        }
+
+        // Prepare input data from the train's history
+        Batch batch = inferenceBuffers.get().forRows(1);
+        long version = fillInputRow(history, batch, 0);
         
         // Run prediction
-        float[][] outputData = new float[1][1];
-        tflite.run(inputData, outputData);
+        run(batch);
         
         // Convert prediction to minutes
-        return Math.round(outputData[0][0]);
+        int delay = Math.round(batch.output.getFloat(0));
+        predictionCache.put(trainId, version, delay);
+        return delay;
     }
 
-    private float[][] prepareInputData(Queue<DelayRecord> history, String station) {
-        float[][] inputData = new float[1][SEQUENCE_LENGTH * FEATURE_COUNT];
-        int index = 0;
-        
-        // Fill with historical data
-        for (DelayRecord record : history) {
-            if (index >= SEQUENCE_LENGTH * FEATURE_COUNT) break;
-            
-            inputData[0][index++] = record.delayMinutes;
-            inputData[0][index++] = record.isWeekend ? 1.0f : 0.0f;
-            inputData[0][index++] = record.isHoliday ? 1.0f : 0.0f;
-            inputData[0][index++] = record.weatherSeverity;
-            inputData[0][index++] = record.stationCongestion;
-            inputData[0][index++] = record.trackMaintenance ? 1.0f : 0.0f;
-            inputData[0][index++] = record.crewChange ? 1.0f : 0.0f;
-            inputData[0][index++] = record.technicalIssue ? 1.0f : 0.0f;
+    // Predictions for parallel arrays of (train, station) pairs. Pairs on the
+    // same train share a row, cached trains skip inference, and all remaining
+    // rows run as one batched inference (split only beyond MAX_BATCH_SIZE rows).
+    public int[] predictDelays(int[] trainIds, int[] stationIds) {
+        Map<Integer, Integer> rowsByTrain = new HashMap<>();
+        int[] rowOfPair = new int[trainIds.length];
+        int[] rowTrains = new int[trainIds.length];
+        int rowCount = 0;
+        for (int i = 0; i < trainIds.length; i++) {
+            Integer row = rowsByTrain.get(trainIds[i]);
+            if (row == null) {
+                row = rowCount;
+                rowsByTrain.put(trainIds[i], row);
+                rowTrains[rowCount++] = trainIds[i];
+            }
+            rowOfPair[i] = row;
         }
-        
-        // Pad remaining slots with zeros
-        while (index < SEQUENCE_LENGTH * FEATURE_COUNT) {
-            inputData[0][index++] = 0.0f;
+
+        int[] rowDelays = new int[rowCount];
+        int[] uncached = new int[rowCount];
+        int uncachedCount = 0;
+        for (int row = 0; row < rowCount; row++) {
+            int trainId = rowTrains[row];
+            rowDelays[row] = predictionCache.get(trainId,
+                versionOf(trainDelayHistory.get(trainId)));
+            if (rowDelays[row] == PredictionCache.MISS) {
+                uncached[uncachedCount++] = row;
+            }
+        }
+
+        InferenceBuffers buffers = inferenceBuffers.get();
+        long[] versions = new long[Math.min(MAX_BATCH_SIZE, uncachedCount)];
+        for (int start = 0; start < uncachedCount; start += MAX_BATCH_SIZE) {
+            int size = Math.min(MAX_BATCH_SIZE, uncachedCount - start);
+            Batch batch = buffers.forRows(size);
+            for (int r = 0; r < size; r++) {
+                int trainId = rowTrains[uncached[start + r]];
+                versions[r] = fillInputRow(trainDelayHistory.get(trainId), batch, r);
+            }
+            // Rows padding the batch to its bucket are zero and ignored
+            for (int r = size; r < batch.rows; r++) {
+                fillInputRow(null, batch, r);
+            }
+            run(batch);
+            for (int r = 0; r < size; r++) {
+                int row = uncached[start + r];
+                rowDelays[row] = Math.round(batch.output.getFloat(r * Float.BYTES));
+                predictionCache.put(rowTrains[row], versions[r], rowDelays[row]);
+            }
+        }
+
+        int[] delays = new int[trainIds.length];
+        for (int i = 0; i < delays.length; i++) {
+            delays[i] = rowDelays[rowOfPair[i]];
+        }
+        return delays;
+    }
+
+    // Runs the batch on a pooled interpreter. Calling the multi-input entry
+    // point with the batch's cached arrays avoids the wrappers run() builds.
+    private void run(Batch batch) {
+        batch.input.rewind();
+        batch.output.rewind();
+        Interpreter interpreter = interpreters.acquire();
+        try {
+            // A no-op unless this interpreter last ran another batch size
+            interpreter.resizeInput(0, batch.shape);
+            interpreter.runForMultipleInputsOutputs(batch.inputs, batch.outputs);
+        } finally {
+            interpreters.release(interpreter);
+        }
+    }
+
+    // Builds the train's history into one row of the input tensor and
+    // returns the history version used; no history yet is an all-zero row
+    private long fillInputRow(DelayHistory history, Batch batch, int row) {
+        batch.inputFloats.position(row * ROW_FLOATS);
+        if (history == null) {
+            batch.inputFloats.put(EMPTY_ROW);
+            return 0;
+        }
+        long version = history.copyFeaturesTo(batch.row);
+        batch.inputFloats.put(batch.row);
+        return version;
+    }
+
+    // Trains without history are at version 0; every change to a train's
+    // history gives it a fresh epoch value as its version
+    private static long versionOf(DelayHistory history) {
+        return history == null ? 0 : history.getVersion();
+    }
+
+    // One thread's direct, native-order tensors, for batch sizes rounded up
+    // to powers of two so that a handful of buffers serve every batch
+    private static class InferenceBuffers {
+        private final Batch[] batches =
+            new Batch[Integer.numberOfTrailingZeros(MAX_BATCH_SIZE) + 1];
+
+        Batch forRows(int rows) {
+            int bucket = 32 - Integer.numberOfLeadingZeros(Math.max(1, rows) - 1);
+            Batch batch = batches[bucket];
+            if (batch == null) {
+                batch = new Batch(1 << bucket);
+                batches[bucket] = batch;
+            }
+            return batch;
+        }
+    }
+
+    private static class Batch {
+        final int rows;
+        final int[] shape;
+        final ByteBuffer input;
+        final ByteBuffer output;
+        final FloatBuffer inputFloats; // view of input for bulk row copies
+        final float[] row = new float[ROW_FLOATS]; // a row built before its bulk copy
+        final Object[] inputs;
+        final Map<Integer, Object> outputs;
+
+        Batch(int rows) {
+            this.rows = rows;
+            this.shape = new int[] {rows, ROW_FLOATS};
+            this.input = ByteBuffer.allocateDirect(rows * ROW_FLOATS * Float.BYTES)
+                .order(ByteOrder.nativeOrder());
+            this.output = ByteBuffer.allocateDirect(rows * Float.BYTES)
+                .order(ByteOrder.nativeOrder());
+            this.inputFloats = input.asFloatBuffer();
+            this.inputs = new Object[] {input};
+            this.outputs = Collections.singletonMap(0, output);
         }
-        
-        return inputData;
     }
 
     private void loadHistoricalData() {
@@ -75,20 +241,38 @@ public class DelayPredictor {
             @Override
             public void onDataChange(com.google.firebase.database.DataSnapshot snapshot) {
                 for (com.google.firebase.database.DataSnapshot trainSnapshot : snapshot.getChildren()) {
-                    String trainNumber = trainSnapshot.getKey();
-                    Queue<DelayRecord> history = new LinkedList<>();
+                    int trainId = IdDictionary.TRAINS.intern(trainSnapshot.getKey());
+                    DelayHistory history = new DelayHistory(trainId, SEQUENCE_LENGTH);
                     
                     for (com.google.firebase.database.DataSnapshot delaySnapshot : trainSnapshot.getChildren()) {
                         DelayRecord record = delaySnapshot.getValue(DelayRecord.class);
                         if (record != null) {
-                            history.add(record);
-                            if (history.size() > SEQUENCE_LENGTH) {
-                                history.poll();
-                            }
+                            history.add(record); // keeps the last SEQUENCE_LENGTH
                         }
                     }
                     
-                    trainDelayHistory.put(trainNumber, history);
+                    // A sync echoing what is already known, e.g. our own
+                    // recordDelay, keeps the train's version and its cached
+                    // predictions
+                    DelayHistory current = trainDelayHistory.get(trainId);
+                    if (current == null && history.isEmpty()) {
+                        continue;
+                    }
+                    boolean same = false;
+                    if (current != null) {
+                        // Compared and read together, so a concurrent
+                        // recordDelay cannot lend its version to older records
+                        synchronized (current) {
+                            same = current.sameFeatures(history);
+                            if (same) {
+                                history.setVersion(current.getVersion());
+                            }
+                        }
+                    }
+                    if (!same) {
+                        history.setVersion(epoch.incrementAndGet());
+                    }
+                    trainDelayHistory.put(trainId, history);
                 }
             }
 
@@ -122,13 +306,10 @@ public class DelayPredictor {
         );
         
         // Update local cache
-        Queue<DelayRecord> history = trainDelayHistory.computeIfAbsent(
-            trainNumber, k -> new LinkedList<>()
-        );
-        history.add(record);
-        if (history.size() > SEQUENCE_LENGTH) {
-            history.poll();
-        }
+        int trainId = IdDictionary.TRAINS.intern(trainNumber);
+        trainDelayHistory.computeIfAbsent(
+            trainId, k -> new DelayHistory(k, SEQUENCE_LENGTH)
+        ).add(record, epoch.incrementAndGet());
         
         // Update database
         delayRef.child(trainNumber).push().setValue(record);
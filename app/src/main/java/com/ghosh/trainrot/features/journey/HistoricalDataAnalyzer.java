@@ -14,25 +14,49 @@ public class HistoricalDataAnalyzer {
     private static final double ON_TIME_THRESHOLD = 0.8; // 80% on-time threshold
     
     private final DatabaseReference historyRef;
-    private final Map<String, TrainPerformance> trainPerformanceCache;
+    private final IdTable<TrainPerformance> trainPerformanceCache; // by train ID
+    private final ScoreTable reliabilityScores = new ScoreTable(0.5); // 0.5 for unknown trains
     private final ScheduledExecutorService scheduler;
 
     @Inject
     public HistoricalDataAnalyzer(Context context) {
         this.historyRef = FirebaseDatabase.getInstance().getReference("train_history");
-        this.trainPerformanceCache = new ConcurrentHashMap<>();
+        this.trainPerformanceCache = new IdTable<>();
         this.scheduler = Executors.newScheduledThreadPool(1);
         loadHistoricalData();
         schedulePeriodicAnalysis();
     }
 
     public double getTrainReliabilityScore(String trainNumber) {
-        TrainPerformance performance = trainPerformanceCache.get(trainNumber);
-        if (performance == null) {
-            return 0.5; // Default score for unknown trains
+        return getTrainReliabilityScore(IdDictionary.TRAINS.find(trainNumber));
+    }
+
+    public double getTrainReliabilityScore(int trainId) {
+        return reliabilityScores.get(trainId);
+    }
+
+    // Precomputed scores by train ID, rebuilt whenever trip history changes
+    ScoreTable getReliabilityScores() {
+        return reliabilityScores;
+    }
+
+    // Runs under the score table's lock so a recordTrip cannot land between
+    // reading the performance cache and replacing the scores
+    private void rebuildReliabilityScores() {
+        synchronized (reliabilityScores) {
+            rebuildReliabilityScoresLocked();
         }
-        
-        return calculateReliabilityScore(performance);
+    }
+
+    private void rebuildReliabilityScoresLocked() {
+        double[] scores = reliabilityScores.newTable(trainPerformanceCache.capacity());
+        for (int trainId = 0; trainId < scores.length; trainId++) {
+            TrainPerformance performance = trainPerformanceCache.get(trainId);
+            if (performance != null) {
+                scores[trainId] = calculateReliabilityScore(performance);
+            }
+        }
+        reliabilityScores.replace(scores);
     }
 
     private double calculateReliabilityScore(TrainPerformance performance) {
@@ -61,7 +85,7 @@ public class HistoricalDataAnalyzer {
             @Override
             public void onDataChange(com.google.firebase.database.DataSnapshot snapshot) {
                 for (com.google.firebase.database.DataSnapshot trainSnapshot : snapshot.getChildren()) {
-                    String trainNumber = trainSnapshot.getKey();
+                    int trainId = IdDictionary.TRAINS.intern(trainSnapshot.getKey());
                     TrainPerformance performance = new TrainPerformance();
                     
                     for (com.google.firebase.database.DataSnapshot tripSnapshot : trainSnapshot.getChildren()) {
@@ -71,8 +95,9 @@ public class HistoricalDataAnalyzer {
                         }
                     }
                     
-                    trainPerformanceCache.put(trainNumber, performance);
+                    trainPerformanceCache.put(trainId, performance);
                 }
+                rebuildReliabilityScores();
             }
 
             @Override
@@ -105,12 +130,15 @@ public class HistoricalDataAnalyzer {
             long cutoffTime = System.currentTimeMillis() - 
                 TimeUnit.DAYS.toMillis(ANALYSIS_WINDOW_DAYS);
             
-            for (Map.Entry<String, TrainPerformance> entry : trainPerformanceCache.entrySet()) {
-                TrainPerformance performance = entry.getValue();
+            for (int trainId = 0; trainId < trainPerformanceCache.capacity(); trainId++) {
+                TrainPerformance performance = trainPerformanceCache.get(trainId);
+                if (performance == null) {
+                    continue;
+                }
                 performance.lastAnalysisTime = System.currentTimeMillis();
                 
                 // Update database with analyzed data
-                historyRef.child(entry.getKey()).child("analysis")
+                historyRef.child(IdDictionary.TRAINS.get(trainId)).child("analysis")
                     .setValue(performance);
             }
         }, 1, 24, TimeUnit.HOURS);
@@ -118,10 +146,14 @@ public class HistoricalDataAnalyzer {
 
     public void recordTrip(String trainNumber, TripRecord record) {
         // Update local cache
-        TrainPerformance performance = trainPerformanceCache.computeIfAbsent(
-            trainNumber, k -> new TrainPerformance()
-        );
-        updatePerformance(performance, record);
+        int trainId = IdDictionary.TRAINS.intern(trainNumber);
+        synchronized (reliabilityScores) {
+            TrainPerformance performance = trainPerformanceCache.computeIfAbsent(
+                trainId, k -> new TrainPerformance()
+            );
+            updatePerformance(performance, record);
+            reliabilityScores.set(trainId, calculateReliabilityScore(performance));
+        }
         
         // Update database
         historyRef.child(trainNumber).push().setValue(record);
@@ -176,6 +208,16 @@ public class HistoricalDataAnalyzer {
             stationDelays.put(station, delay);
         }
 
+        public void addStationDelay(int stationId, int delay) {
+            addStationDelay(IdDictionary.STATIONS.get(stationId), delay);
+        }
+
+        public int getStationDelay(int stationId, int defaultDelay) {
+            Integer delay = stationDelays == null
+                ? null : stationDelays.get(IdDictionary.STATIONS.get(stationId));
+            return delay != null ? delay : defaultDelay;
+        }
+
         public void setCancellationReason(String reason) {
             this.cancellationReason = reason;
         }
@@ -0,0 +1,64 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Process-wide interning of station codes and train numbers to dense int IDs.
+// IDs are stable for the life of the process, so services can key their
+// caches by int and resolve back to the code only for display or storage.
+public final class IdDictionary {
+    public static final int UNKNOWN = -1;
+
+    public static final IdDictionary STATIONS = new IdDictionary();
+    public static final IdDictionary TRAINS = new IdDictionary();
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[256];
+    private int size;
+
+    private IdDictionary() {
+    }
+
+    public int intern(String value) {
+        if (value == null) {
+            return UNKNOWN;
+        }
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            String[] current = values;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = value;
+            // Publish the slot before the ID becomes visible to readers
+            values = current;
+            ids.put(value, size);
+            return size++;
+        }
+    }
+
+    // ID of a value that was already interned, or UNKNOWN
+    public int find(String value) {
+        if (value == null) {
+            return UNKNOWN;
+        }
+        Integer id = ids.get(value);
+        return id == null ? UNKNOWN : id;
+    }
+
+    public String get(int id) {
+        String[] current = values;
+        return id < 0 || id >= current.length ? null : current[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
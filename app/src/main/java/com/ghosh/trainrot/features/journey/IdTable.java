@@ -0,0 +1,69 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+// Map from dense IdDictionary IDs to values, backed by an array. Reads are
+// lock-free; writes and growth are serialized.
+public final class IdTable<V> {
+    private volatile AtomicReferenceArray<V> slots;
+
+    public IdTable() {
+        this(64);
+    }
+
+    public IdTable(int capacity) {
+        this.slots = new AtomicReferenceArray<>(Math.max(1, capacity));
+    }
+
+    public V get(int id) {
+        AtomicReferenceArray<V> current = slots;
+        return id < 0 || id >= current.length() ? null : current.get(id);
+    }
+
+    public V getOrDefault(int id, V defaultValue) {
+        V value = get(id);
+        return value == null ? defaultValue : value;
+    }
+
+    public synchronized void put(int id, V value) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Invalid id " + id);
+        }
+        ensureCapacity(id + 1).set(id, value);
+    }
+
+    public V computeIfAbsent(int id, IntFunction<? extends V> factory) {
+        V value = get(id);
+        if (value != null) {
+            return value;
+        }
+        synchronized (this) {
+            value = get(id);
+            if (value == null) {
+                value = factory.apply(id);
+                put(id, value);
+            }
+            return value;
+        }
+    }
+
+    // Upper bound for iterating IDs; slots past the last put are null
+    public int capacity() {
+        return slots.length();
+    }
+
+    private AtomicReferenceArray<V> ensureCapacity(int capacity) {
+        AtomicReferenceArray<V> current = slots;
+        if (capacity <= current.length()) {
+            return current;
+        }
+        AtomicReferenceArray<V> grown = new AtomicReferenceArray<>(
+            Math.max(capacity, current.length() * 2));
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        slots = grown;
+        return grown;
+    }
+}
@@ -0,0 +1,115 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.tensorflow.lite.Interpreter;
+
+// Bounded pool of interpreters over one model buffer. An Interpreter is not
+// thread-safe, so each caller checks one out for the duration of a run and
+// returns it; interpreters are created on demand up to the pool size, and
+// callers beyond that wait for a return. Waiters give up with an
+// IllegalStateException once the pool is closed.
+public class InterpreterPool implements AutoCloseable {
+    private static final long CLOSE_CHECK_MILLIS = 50;
+
+    private final ByteBuffer model;
+    private final int size;
+    private final int threadsPerInterpreter;
+    private final ArrayBlockingQueue<Interpreter> idle; // no per-release node allocation
+    private final List<Interpreter> created = new ArrayList<>();
+    private volatile boolean closed;
+
+    private final AtomicLong checkouts = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final LatencyHistogram waitLatency = new LatencyHistogram(); // only checkouts that waited
+
+    public InterpreterPool(ByteBuffer model, int size, int threadsPerInterpreter) {
+        if (size < 1 || threadsPerInterpreter < 1) {
+            throw new IllegalArgumentException("Invalid pool size " + size
+                + " or thread count " + threadsPerInterpreter);
+        }
+        this.model = model;
+        this.size = size;
+        this.threadsPerInterpreter = threadsPerInterpreter;
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    public Interpreter acquire() {
+        checkouts.incrementAndGet();
+        Interpreter interpreter = idle.poll();
+        if (interpreter != null) {
+            return interpreter;
+        }
+        interpreter = create();
+        if (interpreter != null) {
+            return interpreter;
+        }
+
+        waits.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            // Nothing is returned to a closed pool, so wake up to notice
+            while ((interpreter = idle.poll(CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                if (closed) {
+                    throw new IllegalStateException("Interpreter pool is closed");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for an interpreter", e);
+        }
+        waitLatency.recordNanos(System.nanoTime() - start);
+        return interpreter;
+    }
+
+    public synchronized void release(Interpreter interpreter) {
+        if (closed) {
+            interpreter.close();
+            return;
+        }
+        idle.add(interpreter);
+    }
+
+    // A new interpreter while below the pool size, else null
+    private synchronized Interpreter create() {
+        if (closed) {
+            throw new IllegalStateException("Interpreter pool is closed");
+        }
+        if (created.size() >= size) {
+            return null;
+        }
+        Interpreter interpreter = new Interpreter(model,
+            new Interpreter.Options().setNumThreads(threadsPerInterpreter));
+        created.add(interpreter);
+        return interpreter;
+    }
+
+    public int getSize() { return size; }
+    public int getThreadsPerInterpreter() { return threadsPerInterpreter; }
+
+    public synchronized int getCreatedCount() {
+        return created.size();
+    }
+
+    public long getCheckoutCount() { return checkouts.get(); }
+    public long getWaitCount() { return waits.get(); }
+
+    // Time spent blocked by checkouts that found every interpreter busy
+    public LatencyHistogram getWaitLatency() {
+        return waitLatency.copy();
+    }
+
+    // Closes idle interpreters now and checked-out ones as they are returned
+    @Override
+    public synchronized void close() {
+        closed = true;
+        Interpreter interpreter;
+        while ((interpreter = idle.poll()) != null) {
+            interpreter.close();
+        }
+    }
+}
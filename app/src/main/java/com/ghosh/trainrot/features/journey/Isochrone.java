@@ -0,0 +1,74 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.*;
+
+// Earliest arrival and the transfers it takes at every station reachable from
+// one origin, as found by a single one-to-all scan
+public class Isochrone {
+    public static final int UNREACHED = ConnectionScanner.UNREACHED;
+
+    private final TimetableStore store;
+    private final String sourceStation;
+    private final int departureTime;
+    private final int[] arrival; // by timetable station, UNREACHED if not reached
+    private final int[] legs;
+
+    Isochrone(TimetableStore store, String sourceStation, int departureTime,
+              ConnectionScanner.ScanResult scan) {
+        this.store = store;
+        this.sourceStation = sourceStation;
+        this.departureTime = departureTime;
+        int stations = store.getStationCount();
+        this.arrival = new int[stations];
+        this.legs = new int[stations];
+        for (int station = 0; station < stations; station++) {
+            arrival[station] = scan.getEarliestArrival(station);
+            legs[station] = scan.getFewestLegs(station);
+        }
+    }
+
+    public String getSourceStation() {
+        return sourceStation;
+    }
+
+    public int getDepartureTime() {
+        return departureTime;
+    }
+
+    public boolean isReachable(String stationCode) {
+        return getEarliestArrival(stationCode) != UNREACHED;
+    }
+
+    public int getEarliestArrival(String stationCode) {
+        int station = store.stationId(stationCode);
+        return station < 0 ? UNREACHED : arrival[station];
+    }
+
+    // Changes of train on the fastest way there, or -1 if not reachable;
+    // the origin itself takes none
+    public int getTransfers(String stationCode) {
+        int station = store.stationId(stationCode);
+        if (station < 0 || arrival[station] == UNREACHED) {
+            return -1;
+        }
+        return Math.max(0, legs[station] - 1);
+    }
+
+    // Reachable stations other than the origin, earliest arrival first
+    public List<String> getReachableStations() {
+        List<Integer> reached = new ArrayList<>();
+        int source = store.stationId(sourceStation);
+        for (int station = 0; station < arrival.length; station++) {
+            if (arrival[station] != UNREACHED && station != source) {
+                reached.add(station);
+            }
+        }
+        reached.sort(Comparator.comparingInt(station -> arrival[station]));
+
+        List<String> codes = new ArrayList<>(reached.size());
+        for (int station : reached) {
+            codes.add(store.getStationCode(station));
+        }
+        return codes;
+    }
+}
@@ -1,10 +1,14 @@
 package com.ghosh.trainrot.features.journey;
 
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.io.File;
+import java.io.FileInputStream;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.math3.optim.*;
 import org.apache.commons.math3.optim.linear.*;
 import org.apache.commons.math3.optim.nonlinear.scalar.*;
@@ -12,84 +16,602 @@ import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.*;
 
 @Singleton
 public class JourneyPlanner {
+    // Compiled by tools' TimetableImporter and stored uncompressed
+    private static final String TIMETABLE_FILE = "timetable.trtt";
     private static final int PARAMETER_COUNT = 17;
-    private static final int ROUTE_THRESHOLD = 28000;
     private static final int MAX_CONNECTIONS = 3;
     private static final int MIN_TRANSFER_TIME = 15; // minutes
     private static final int MAX_TRANSFER_TIME = 120; // minutes
+    private static final int LUGGAGE_BUFFER_TIME = 15; // minutes
+    private static final int MAX_RESULTS = 10;
+    private static final int SEARCH_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final int ROUTE_CACHE_SIZE = 128;
+    private static final long ROUTE_CACHE_TTL_MINUTES = 10;
+    private static final int MAX_SUGGESTIONS = 10;
+    private static final double DEFAULT_CLASS_COMFORT = 0.5;
 
-    private final ExecutorService executor;
+    private final ForkJoinPool executor; // shared by route scans of all queries
     private final DelayPredictor delayPredictor;
     private final StationFacilityAnalyzer facilityAnalyzer;
     private final HistoricalDataAnalyzer historicalAnalyzer;
+    private volatile ConnectionScanner connectionScanner;
+    private volatile RaptorPlanner raptorPlanner;
+    private volatile SplitTicketOptimizer splitTicketOptimizer;
+    private volatile SuggestionIndex suggestionIndex = SuggestionIndex.EMPTY;
+    private SegmentFares segmentFares = SegmentFares.TIMETABLE;
+    private boolean goalDirected;
+    private final AtomicLong timetableVersion = new AtomicLong();
+    private final RouteCache routeCache =
+        new RouteCache(ROUTE_CACHE_SIZE, ROUTE_CACHE_TTL_MINUTES, TimeUnit.MINUTES);
+    // Class comfort by train ID for the loaded timetable
+    private final ScoreTable classComfortScores = new ScoreTable(DEFAULT_CLASS_COMFORT);
+    private final PlannerMetrics metrics = new PlannerMetrics();
 
+    // Plans over the timetable bundled with the app, mapped in place
     @Inject
+    public JourneyPlanner(Context context,
+                         DelayPredictor delayPredictor,
+                         StationFacilityAnalyzer facilityAnalyzer,
+                         HistoricalDataAnalyzer historicalAnalyzer) {
+        this(delayPredictor, facilityAnalyzer, historicalAnalyzer);
+        loadTimetable(loadTimetableFile(context));
+    }
+
+    // Finds nothing until a timetable is loaded
     public JourneyPlanner(DelayPredictor delayPredictor, 
                          StationFacilityAnalyzer facilityAnalyzer,
                          HistoricalDataAnalyzer historicalAnalyzer) {
-        this.executor = Executors.newFixedThreadPool(4);
+        this.executor = new ForkJoinPool(SEARCH_THREADS);
         this.delayPredictor = delayPredictor;
         this.facilityAnalyzer = facilityAnalyzer;
         this.historicalAnalyzer = historicalAnalyzer;
     }
 
+    private static TimetableStore loadTimetableFile(Context context) {
+        try {
+            AssetFileDescriptor descriptor = context.getAssets().openFd(TIMETABLE_FILE);
+            try (FileInputStream inputStream = new FileInputStream(descriptor.getFileDescriptor())) {
+                return TimetableFile.map(inputStream.getChannel(), descriptor.getStartOffset(),
+                    descriptor.getDeclaredLength());
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error loading timetable file", e);
+        }
+    }
+
     public enum OptimizationMode {
         MINIMUM_DURATION,
         LOWEST_COST,
         COMFORT
     }
 
+    public void loadTimetable(Collection<JourneyLeg> elementaryLegs) {
+        loadTimetable(toTimetable(elementaryLegs));
+    }
+
+    public void loadTimetable(File timetableFile) {
+        try {
+            loadTimetable(TimetableFile.map(timetableFile));
+        } catch (Exception e) {
+            throw new RuntimeException("Error loading timetable file", e);
+        }
+    }
+
+    public synchronized void loadTimetable(TimetableStore store) {
+        RaptorPlanner planner = new RaptorPlanner(store, executor);
+        planner.setGoalDirected(goalDirected);
+        this.raptorPlanner = planner;
+        this.connectionScanner = new ConnectionScanner(store);
+        this.splitTicketOptimizer = newSplitTicketOptimizer(store, segmentFares);
+        this.suggestionIndex = SuggestionIndex.build(store);
+        rebuildClassComfortScores(store);
+        timetableVersion.incrementAndGet();
+        // Old entries can no longer match; drop them rather than wait for eviction
+        routeCache.clear();
+    }
+
+    // Ticket prices used for split ticketing in LOWEST_COST mode; package-private
+    // until the app has a non-additive fare source
+    synchronized void setSegmentFares(SegmentFares fares) {
+        this.segmentFares = fares;
+        RaptorPlanner planner = raptorPlanner;
+        if (planner != null) {
+            this.splitTicketOptimizer = newSplitTicketOptimizer(planner.getStore(), fares);
+        }
+        // Cached costs were priced with the old fares
+        timetableVersion.incrementAndGet();
+        routeCache.clear();
+    }
+
+    // Null for additive fares, which no split can undercut
+    private static SplitTicketOptimizer newSplitTicketOptimizer(TimetableStore store,
+                                                                SegmentFares fares) {
+        return fares == SegmentFares.TIMETABLE ? null : new SplitTicketOptimizer(store, fares);
+    }
+
+    // Prunes RAPTOR labels with the timetable's landmark bounds; journeys found
+    // are the same, so cached routes stay valid
+    public synchronized void setGoalDirected(boolean goalDirected) {
+        this.goalDirected = goalDirected;
+        RaptorPlanner planner = raptorPlanner;
+        if (planner != null) {
+            planner.setGoalDirected(goalDirected);
+        }
+    }
+
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    // Stations and trains of the loaded timetable matching what has been
+    // typed so far; kind limits the results to one of them, null allows both
+    public List<SuggestionIndex.Suggestion> suggest(String query, SuggestionIndex.Kind kind) {
+        return suggestionIndex.suggest(query, MAX_SUGGESTIONS, kind);
+    }
+
+    // Stage latencies and candidate counts of planJourney
+    public PlannerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public JourneyRoute findEarliestArrival(String source, String destination,
+                                          int departureTimeMinutes,
+                                          JourneyPreferences preferences) {
+        ConnectionScanner scanner = connectionScanner;
+        if (scanner == null) {
+            return null;
+        }
+
+        TimetableStore store = scanner.getStore();
+        int sourceId = store.stationId(source);
+        int destinationId = store.stationId(destination);
+        if (sourceId < 0 || destinationId < 0) {
+            return null;
+        }
+
+        List<ConnectionScanner.Journey> journeys = scanner.scan(sourceId, destinationId,
+            departureTimeMinutes, MAX_CONNECTIONS, toConstraints(store, preferences))
+            .getJourneys(destinationId);
+        // The last journey of the Pareto set is the one with the earliest arrival
+        return journeys.isEmpty() ? null
+            : toRoute(source, journeys.get(journeys.size() - 1), store);
+    }
+
+    // Everywhere reachable from the source by the deadline with at most the
+    // given number of changes, in one sweep over the connections
+    public Isochrone findReachableStations(String source, int departureTimeMinutes,
+                                           int arriveByMinutes, int maxTransfers,
+                                           JourneyPreferences preferences) {
+        ConnectionScanner scanner = connectionScanner;
+        if (scanner == null) {
+            return null;
+        }
+
+        TimetableStore store = scanner.getStore();
+        int sourceId = store.stationId(source);
+        if (sourceId < 0) {
+            return null;
+        }
+
+        ConnectionScanner.ScanResult scan = scanner.scan(sourceId, -1, departureTimeMinutes,
+            arriveByMinutes, maxTransfers + 1, toConstraints(store, preferences));
+        return new Isochrone(store, source, departureTimeMinutes, scan);
+    }
+
+    public OdMatrix planMatrix(List<String> sources, List<String> destinations,
+                               int departureTimeMinutes, JourneyPreferences preferences) {
+        return planMatrix(sources, destinations, departureTimeMinutes, preferences, null);
+    }
+
+    // Earliest-arrival journeys for every origin-destination pair. Each distinct
+    // origin is searched once, one-to-all, and its scan answers every
+    // destination; origins run in parallel and rows are streamed to the
+    // listener as they complete.
+    public OdMatrix planMatrix(List<String> sources, List<String> destinations,
+                               int departureTimeMinutes, JourneyPreferences preferences,
+                               OdMatrix.RowListener listener) {
+        OdMatrix matrix = new OdMatrix(sources, destinations);
+        ConnectionScanner scanner = connectionScanner;
+        if (scanner == null) {
+            return matrix;
+        }
+
+        TimetableStore store = scanner.getStore();
+        SearchConstraints constraints = toConstraints(store, preferences);
+        int[] targets = new int[destinations.size()];
+        for (int column = 0; column < targets.length; column++) {
+            targets[column] = store.stationId(destinations.get(column));
+        }
+
+        Map<String, List<Integer>> rowsBySource = new LinkedHashMap<>();
+        for (int row = 0; row < sources.size(); row++) {
+            rowsBySource.computeIfAbsent(sources.get(row), k -> new ArrayList<>()).add(row);
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(rowsBySource.size());
+        for (Map.Entry<String, List<Integer>> entry : rowsBySource.entrySet()) {
+            tasks.add(executor.submit(() -> {
+                int sourceId = store.stationId(entry.getKey());
+                if (sourceId >= 0) {
+                    ConnectionScanner.ScanResult scan = scanner.scan(sourceId, -1,
+                        departureTimeMinutes, MAX_CONNECTIONS, constraints);
+                    for (int row : entry.getValue()) {
+                        fillMatrixRow(matrix, row, sourceId, targets, scan, store);
+                    }
+                }
+                if (listener != null) {
+                    synchronized (listener) {
+                        for (int row : entry.getValue()) {
+                            listener.onRow(matrix, row);
+                        }
+                    }
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        return matrix;
+    }
+
+    private static void fillMatrixRow(OdMatrix matrix, int row, int sourceId, int[] targets,
+                                      ConnectionScanner.ScanResult scan, TimetableStore store) {
+        for (int column = 0; column < targets.length; column++) {
+            int target = targets[column];
+            if (target < 0) {
+                continue;
+            }
+            if (target == sourceId) {
+                matrix.set(row, column, 0, 0, 0);
+                continue;
+            }
+            ConnectionScanner.Journey journey = scan.getEarliestJourney(target);
+            if (journey == null) {
+                continue;
+            }
+            int legs = journey.getLegCount();
+            int fare = 0;
+            for (int i = 0; i < legs; i++) {
+                fare += store.getFarePaise(journey.getAlightStop(i))
+                    - store.getFarePaise(journey.getBoardStop(i));
+            }
+            int duration = store.getArrival(journey.getAlightStop(legs - 1))
+                - store.getDeparture(journey.getBoardStop(0));
+            matrix.set(row, column, duration, legs - 1, fare);
+        }
+    }
+
     public List<JourneyRoute> planJourney(String source, String destination, 
                                         OptimizationMode mode, 
                                         JourneyPreferences preferences) {
-        // 1. Fetch available routes
-        List<JourneyRoute> allRoutes = fetchAvailableRoutes(source, destination);
+        return planJourney(source, destination, 0, mode, preferences);
+    }
+
+    public List<JourneyRoute> planJourney(String source, String destination,
+                                        int departureTimeMinutes,
+                                        OptimizationMode mode,
+                                        JourneyPreferences preferences) {
+        long start = System.nanoTime();
+        metrics.increment(PlannerMetrics.Counter.QUERIES);
+        // Version and epoch are read before planning, so a concurrent reload
+        // can only make the entry unreachable, never stale
+        RouteCache.Key key = new RouteCache.Key(source, destination, departureTimeMinutes,
+            mode, preferences, timetableVersion.get(), delayPredictor.getEpoch());
+        List<JourneyRoute> cached = routeCache.get(key);
+        if (cached != null) {
+            metrics.increment(PlannerMetrics.Counter.CACHE_HITS);
+            metrics.recordNanos(PlannerMetrics.Stage.TOTAL, System.nanoTime() - start);
+            return cached;
+        }
+
+        // 1. Fetch available routes; preference filters are applied by the search
+        List<JourneyRoute> allRoutes = fetchAvailableRoutes(source, destination,
+            departureTimeMinutes, preferences);
         
         // 2. Apply optimization based on mode
+        long stageStart = System.nanoTime();
         List<JourneyRoute> optimizedRoutes = optimizeRoutes(allRoutes, mode, preferences);
+        metrics.recordNanos(PlannerMetrics.Stage.OPTIMIZE, System.nanoTime() - stageStart);
+        metrics.add(PlannerMetrics.Counter.CANDIDATES_PRUNED,
+            Math.max(0, allRoutes.size() - optimizedRoutes.size()));
         
         // 3. Consider historical delay patterns
+        stageStart = System.nanoTime();
         applyDelayPatterns(optimizedRoutes);
+        metrics.recordNanos(PlannerMetrics.Stage.DELAY_PATTERNS, System.nanoTime() - stageStart);
         
-        // 4. Apply smart filters
-        return applySmartFilters(optimizedRoutes, preferences);
+        routeCache.put(key, optimizedRoutes);
+        metrics.recordNanos(PlannerMetrics.Stage.TOTAL, System.nanoTime() - start);
+        return optimizedRoutes;
     }
 
-    private List<JourneyRoute> fetchAvailableRoutes(String source, String destination) {
-        List<JourneyRoute> routes = new ArrayList<>();
-        Set<String> visitedStations = new HashSet<>();
-        
-        // Use BFS to find all possible routes
-        Queue<JourneyRoute> queue = new LinkedList<>();
-        queue.add(new JourneyRoute(source));
-        
-        while (!queue.isEmpty() && routes.size() < ROUTE_THRESHOLD) {
-            JourneyRoute currentRoute = queue.poll();
-            String lastStation = currentRoute.getLastStation();
-            
-            if (lastStation.equals(destination)) {
-                routes.add(currentRoute);
-                continue;
+    // Alternatives for the rest of a journey hit by live delays, earliest
+    // arrival first. The traveller holds leg legIndex at currentStation: at
+    // the leg's boarding station they are still waiting for it, further along
+    // they are on board. Earlier legs are kept, and one search runs from
+    // every stop still ahead on the current train, with delays (minutes late
+    // by train number) applied to every train.
+    public List<JourneyRoute> replan(JourneyRoute route, int legIndex, String currentStation,
+                                     Map<String, Integer> delays,
+                                     JourneyPreferences preferences) {
+        long start = System.nanoTime();
+        RaptorPlanner planner = raptorPlanner;
+        if (planner == null || route.store != planner.getStore()) {
+            // Stop indexes of the route refer to a timetable no longer loaded
+            return new ArrayList<>();
+        }
+        TimetableStore store = route.store;
+        JourneyLeg leg = route.getLegs().get(legIndex);
+        int target = store.stationId(route.getLastStation());
+        int current = store.stationId(currentStation);
+        if (leg.boardStop < 0 || target < 0 || current < 0) {
+            return new ArrayList<>();
+        }
+        int position = leg.boardStop;
+        while (position <= leg.alightStop && store.getStation(position) != current) {
+            position++;
+        }
+        if (position > leg.alightStop) {
+            throw new IllegalArgumentException("Station " + currentStation
+                + " is not on leg " + legIndex);
+        }
+
+        SearchConstraints constraints = toConstraints(store, preferences)
+            .withDelays(toTrainDelays(store, delays));
+        int transfer = constraints.getMinTransferTime();
+        int train = store.getTrain(leg.boardStop);
+        boolean onBoard = position > leg.boardStop;
+        List<JourneyLeg> kept = new ArrayList<>(route.getLegs().subList(0, legIndex));
+        List<JourneyRoute> alternatives = new ArrayList<>();
+
+        // Seeds: the station they wait at, or every stop still ahead on the
+        // train with the fare of riding there already spent
+        int[] seedStops;
+        int[] seedTimes;
+        int[] seedFares;
+        if (onBoard) {
+            int lastStop = store.getFirstStop(train) + store.getStopCount(train) - 1;
+            int count = lastStop - position + 1;
+            seedStops = new int[count];
+            seedTimes = new int[count];
+            seedFares = new int[count];
+            for (int i = 0; i < count; i++) {
+                int stop = position + i;
+                seedStops[i] = stop;
+                seedFares[i] = store.getFarePaise(stop) - store.getFarePaise(leg.boardStop);
+                int arrival = store.getArrival(stop) + constraints.getDelay(train);
+                if (store.getStation(stop) == target) {
+                    // Staying on board is an alternative of its own
+                    alternatives.add(toReplannedRoute(route, kept, leg.boardStop, stop,
+                        Collections.emptyList(), constraints));
+                    seedTimes[i] = arrival;
+                } else {
+                    seedTimes[i] = arrival + transfer;
+                }
             }
-            
-            if (currentRoute.getLegs().size() >= MAX_CONNECTIONS) {
+        } else {
+            int ready = leg.getDepartureTimeMinutes();
+            if (legIndex > 0) {
+                JourneyLeg previous = route.getLegs().get(legIndex - 1);
+                int delay = previous.boardStop < 0
+                    ? 0 : constraints.getDelay(store.getTrain(previous.boardStop));
+                ready = previous.getArrivalTimeMinutes() + delay + transfer;
+            }
+            seedStops = new int[] {position};
+            seedTimes = new int[] {ready};
+            seedFares = new int[] {0};
+        }
+        int[] seedStations = new int[seedStops.length];
+        for (int i = 0; i < seedStops.length; i++) {
+            seedStations[i] = store.getStation(seedStops[i]);
+        }
+
+        for (ConnectionScanner.Journey journey : planner.findParetoJourneys(seedStations,
+                seedTimes, seedFares, target, MAX_CONNECTIONS, constraints)) {
+            // Riding on is covered by the seeds; re-boarding the same train is not an alternative
+            if (onBoard && store.getTrain(journey.getBoardStop(0)) == train) {
                 continue;
             }
-            
-            List<JourneyLeg> possibleLegs = findPossibleLegs(lastStation);
-            for (JourneyLeg leg : possibleLegs) {
-                String nextStation = leg.getDestinationStation();
-                if (!visitedStations.contains(nextStation)) {
-                    visitedStations.add(nextStation);
-                    JourneyRoute newRoute = currentRoute.addLeg(leg);
-                    queue.add(newRoute);
+            List<JourneyLeg> legs = new ArrayList<>(journey.getLegCount());
+            for (int i = 0; i < journey.getLegCount(); i++) {
+                legs.add(createDelayedLeg(store, journey.getBoardStop(i),
+                    journey.getAlightStop(i), constraints));
+            }
+            int seedStop = -1;
+            if (onBoard) {
+                int boardStation = store.getStation(journey.getBoardStop(0));
+                for (int i = 0; i < seedStops.length && seedStop < 0; i++) {
+                    if (seedStations[i] == boardStation) {
+                        seedStop = seedStops[i];
+                    }
                 }
             }
+            alternatives.add(toReplannedRoute(route, kept, leg.boardStop, seedStop, legs,
+                constraints));
         }
-        
+
+        alternatives.sort(Comparator.comparingInt((JourneyRoute r) -> lastArrival(r))
+            .thenComparingInt(r -> r.getLegs().size()));
+        metrics.recordNanos(PlannerMetrics.Stage.REPLAN, System.nanoTime() - start);
+        return alternatives;
+    }
+
+    // Kept legs, then the current train ridden to alightStop if still on
+    // board (alightStop >= 0), then the new legs
+    private JourneyRoute toReplannedRoute(JourneyRoute original, List<JourneyLeg> kept,
+                                          int boardStop, int alightStop,
+                                          List<JourneyLeg> newLegs,
+                                          SearchConstraints constraints) {
+        TimetableStore store = original.store;
+        List<JourneyLeg> legs = new ArrayList<>(kept.size() + 1 + newLegs.size());
+        legs.addAll(kept);
+        if (alightStop >= 0) {
+            legs.add(createDelayedLeg(store, boardStop, alightStop, constraints));
+        }
+        legs.addAll(newLegs);
+
+        double totalCost = 0;
+        for (JourneyLeg leg : legs) {
+            totalCost += leg.getFare();
+        }
+        JourneyRoute route = new JourneyRoute(original.getSourceStation());
+        route.setLegs(legs);
+        route.setTotalCost(totalCost);
+        route.setTotalDuration(lastArrival(route) - legs.get(0).getDepartureTimeMinutes());
+        route.store = store;
+        return route;
+    }
+
+    // Leg with its times shifted by the train's live delay
+    private static JourneyLeg createDelayedLeg(TimetableStore store, int boardStop,
+                                               int alightStop, SearchConstraints constraints) {
+        JourneyLeg leg = createLeg(store, boardStop, alightStop);
+        int delay = constraints.getDelay(store.getTrain(boardStop));
+        leg.setDepartureTimeMinutes(leg.getDepartureTimeMinutes() + delay);
+        leg.setArrivalTimeMinutes(leg.getArrivalTimeMinutes() + delay);
+        return leg;
+    }
+
+    private static int lastArrival(JourneyRoute route) {
+        List<JourneyLeg> legs = route.getLegs();
+        return legs.get(legs.size() - 1).getArrivalTimeMinutes();
+    }
+
+    // Minutes late by timetable train; early running counts as on time and
+    // trains outside the timetable are ignored
+    private static int[] toTrainDelays(TimetableStore store, Map<String, Integer> delays) {
+        int[] trainDelays = new int[store.getTrainCount()];
+        for (Map.Entry<String, Integer> delay : delays.entrySet()) {
+            int train = store.trainId(delay.getKey());
+            if (train >= 0 && delay.getValue() != null) {
+                trainDelays[train] = Math.max(0, delay.getValue());
+            }
+        }
+        return trainDelays;
+    }
+
+    private List<JourneyRoute> fetchAvailableRoutes(String source, String destination,
+                                                  int departureTime,
+                                                  JourneyPreferences preferences) {
+        List<JourneyRoute> routes = new ArrayList<>();
+        RaptorPlanner planner = raptorPlanner;
+        if (planner == null) {
+            return routes;
+        }
+
+        TimetableStore store = planner.getStore();
+        int sourceId = store.stationId(source);
+        int destinationId = store.stationId(destination);
+        if (sourceId < 0 || destinationId < 0) {
+            return routes;
+        }
+
+        // Smart filters become search constraints
+        long stageStart = System.nanoTime();
+        SearchConstraints constraints = toConstraints(store, preferences);
+        metrics.recordNanos(PlannerMetrics.Stage.FILTERS, System.nanoTime() - stageStart);
+        metrics.add(PlannerMetrics.Counter.TRAINS_FILTERED_OUT,
+            constraints.getExcludedTrainCount());
+
+        // Pareto front over arrival, transfers and fare; each mode picks from it
+        stageStart = System.nanoTime();
+        for (ConnectionScanner.Journey journey : planner.findParetoJourneys(sourceId,
+                destinationId, departureTime, MAX_CONNECTIONS, constraints)) {
+            routes.add(toRoute(source, journey, store));
+        }
+        metrics.recordNanos(PlannerMetrics.Stage.FETCH, System.nanoTime() - stageStart);
+        metrics.add(PlannerMetrics.Counter.CANDIDATES_GENERATED, routes.size());
         return routes;
     }
 
+    // Transfer window widened by the luggage buffer, and the trains whose class
+    // is preferred; no preferred classes means any class
+    private static SearchConstraints toConstraints(TimetableStore store,
+                                                   JourneyPreferences preferences) {
+        int minTransferTime = preferences.getMinTransferTime();
+        if (preferences.isIncludeLuggageBuffer()) {
+            minTransferTime = Math.max(minTransferTime, LUGGAGE_BUFFER_TIME);
+        }
+
+        boolean[] allowedTrains = null;
+        List<String> trainClasses = preferences.getPreferredTrainClasses();
+        if (trainClasses != null && !trainClasses.isEmpty()) {
+            Set<String> classes = new HashSet<>(trainClasses);
+            allowedTrains = new boolean[store.getTrainCount()];
+            for (int train = 0; train < allowedTrains.length; train++) {
+                allowedTrains[train] = classes.contains(store.getTrainClass(train));
+            }
+        }
+        return new SearchConstraints(minTransferTime, preferences.getMaxTransferTime(),
+            allowedTrains);
+    }
+
+    private JourneyRoute toRoute(String source, ConnectionScanner.Journey journey,
+                                 TimetableStore store) {
+        List<JourneyLeg> legs = new ArrayList<>(journey.getLegCount());
+        double totalCost = 0;
+        for (int i = 0; i < journey.getLegCount(); i++) {
+            JourneyLeg leg = createLeg(store, journey.getBoardStop(i), journey.getAlightStop(i));
+            legs.add(leg);
+            totalCost += leg.getFare();
+        }
+
+        JourneyRoute route = new JourneyRoute(source);
+        route.setLegs(legs);
+        route.setTotalCost(totalCost);
+        route.setTotalDuration(legs.get(legs.size() - 1).getArrivalTimeMinutes()
+            - legs.get(0).getDepartureTimeMinutes());
+        route.store = store;
+        return route;
+    }
+
+    // Materializes a ride on one train from the board stop to the alight stop
+    private static JourneyLeg createLeg(TimetableStore store, int boardStop, int alightStop) {
+        int train = store.getTrain(boardStop);
+        JourneyLeg leg = new JourneyLeg();
+        leg.setTrainNumber(store.getTrainNumber(train));
+        leg.setTrainName(store.getTrainName(train));
+        leg.setTrainClass(store.getTrainClass(train));
+        leg.setSourceStation(store.getStationCode(store.getStation(boardStop)));
+        leg.setDestinationStation(store.getStationCode(store.getStation(alightStop)));
+        leg.setDepartureTimeMinutes(store.getDeparture(boardStop));
+        leg.setArrivalTimeMinutes(store.getArrival(alightStop));
+        leg.setPlatform(store.getPlatform(boardStop));
+        leg.setFare((store.getFarePaise(alightStop) - store.getFarePaise(boardStop)) / 100.0);
+        leg.boardStop = boardStop;
+        leg.alightStop = alightStop;
+        return leg;
+    }
+
+    // Elementary legs of the same train number are chained into one train
+    private static TimetableStore toTimetable(Collection<JourneyLeg> elementaryLegs) {
+        Map<String, List<JourneyLeg>> byTrain = new LinkedHashMap<>();
+        for (JourneyLeg leg : elementaryLegs) {
+            byTrain.computeIfAbsent(leg.getTrainNumber(), k -> new ArrayList<>()).add(leg);
+        }
+
+        TimetableStore.Builder builder = new TimetableStore.Builder();
+        for (List<JourneyLeg> legs : byTrain.values()) {
+            legs.sort(Comparator.comparingInt(JourneyLeg::getDepartureTimeMinutes));
+            JourneyLeg first = legs.get(0);
+            int train = builder.addTrain(first.getTrainNumber(), first.getTrainName(),
+                first.getTrainClass());
+
+            int fare = 0;
+            int arrival = first.getDepartureTimeMinutes();
+            for (JourneyLeg leg : legs) {
+                builder.addStopTime(train, builder.addStation(leg.getSourceStation(), null),
+                    arrival, leg.getDepartureTimeMinutes(), leg.getPlatform(), fare);
+                fare += Math.round(leg.getFare() * 100);
+                arrival = leg.getArrivalTimeMinutes();
+            }
+            JourneyLeg last = legs.get(legs.size() - 1);
+            builder.addStopTime(train, builder.addStation(last.getDestinationStation(), null),
+                arrival, arrival, null, fare);
+        }
+        return builder.build();
+    }
+
     private List<JourneyRoute> optimizeRoutes(List<JourneyRoute> routes, 
                                             OptimizationMode mode,
                                             JourneyPreferences preferences) {
@@ -106,10 +628,7 @@ public class JourneyPlanner {
     }
 
     private List<JourneyRoute> optimizeForDuration(List<JourneyRoute> routes) {
-        return routes.stream()
-            .sorted(Comparator.comparingInt(JourneyRoute::getTotalDuration))
-            .limit(10)
-            .collect(Collectors.toList());
+        return topK(routes, Comparator.comparingInt(JourneyRoute::getTotalDuration), MAX_RESULTS);
     }
 
     private List<JourneyRoute> optimizeForCost(List<JourneyRoute> routes, 
@@ -122,126 +641,202 @@ public class JourneyPlanner {
             optimizedRoutes.addAll(splitRoutes);
         }
         
-        return optimizedRoutes.stream()
-            .sorted(Comparator.comparingDouble(JourneyRoute::getTotalCost))
-            .limit(10)
-            .collect(Collectors.toList());
+        return topK(optimizedRoutes, Comparator.comparingDouble(JourneyRoute::getTotalCost),
+            MAX_RESULTS);
     }
 
     private List<JourneyRoute> optimizeForComfort(List<JourneyRoute> routes,
                                                 JourneyPreferences preferences) {
-        return routes.stream()
-            .map(route -> {
-                double comfortScore = calculateComfortScore(route, preferences);
-                route.setComfortScore(comfortScore);
-                return route;
-            })
-            .sorted(Comparator.comparingDouble(JourneyRoute::getComfortScore).reversed())
-            .limit(10)
-            .collect(Collectors.toList());
-    }
-
-    private void applyDelayPatterns(List<JourneyRoute> routes) {
+        // One snapshot of each score table for the whole ranking
+        ComfortTables tables = new ComfortTables(classComfortScores,
+            facilityAnalyzer.getComfortScores(), historicalAnalyzer.getReliabilityScores());
         for (JourneyRoute route : routes) {
-            for (JourneyLeg leg : route.getLegs()) {
-                int predictedDelay = delayPredictor.predictDelay(
-                    leg.getTrainNumber(),
-                    leg.getSourceStation()
-                );
-                leg.setPredictedDelay(predictedDelay);
-            }
+            route.setComfortScore(calculateComfortScore(route, tables));
         }
+        return topK(routes, Comparator.comparingDouble(JourneyRoute::getComfortScore).reversed(),
+            MAX_RESULTS);
     }
 
-    private List<JourneyRoute> applySmartFilters(List<JourneyRoute> routes,
-                                               JourneyPreferences preferences) {
-        return routes.stream()
-            .filter(route -> isValidTransferTime(route, preferences))
-            .filter(route -> matchesTrainClassPreferences(route, preferences))
-            .filter(route -> hasAdequateLuggageBuffer(route, preferences))
-            .collect(Collectors.toList());
-    }
-
-    private boolean isValidTransferTime(JourneyRoute route, JourneyPreferences preferences) {
-        List<JourneyLeg> legs = route.getLegs();
-        for (int i = 0; i < legs.size() - 1; i++) {
-            JourneyLeg currentLeg = legs.get(i);
-            JourneyLeg nextLeg = legs.get(i + 1);
-            
-            int transferTime = calculateTransferTime(currentLeg, nextLeg);
-            if (transferTime < preferences.getMinTransferTime() || 
-                transferTime > preferences.getMaxTransferTime()) {
-                return false;
+    // Best k items in order, keeping only k candidates in a heap whose head is
+    // the worst kept; ties keep the earlier item
+    private static <T> List<T> topK(Collection<T> items, Comparator<? super T> order, int k) {
+        PriorityQueue<T> heap = new PriorityQueue<>(k + 1, order.reversed());
+        for (T item : items) {
+            if (heap.size() < k) {
+                heap.add(item);
+            } else if (order.compare(item, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(item);
             }
         }
-        return true;
+        List<T> best = new ArrayList<>(heap);
+        best.sort(order);
+        return best;
     }
 
-    private boolean matchesTrainClassPreferences(JourneyRoute route, 
-                                               JourneyPreferences preferences) {
-        return route.getLegs().stream()
-            .allMatch(leg -> preferences.getPreferredTrainClasses()
-                .contains(leg.getTrainClass()));
-    }
+    // One batched prediction for every leg of every route in the query
+    private void applyDelayPatterns(List<JourneyRoute> routes) {
+        List<JourneyLeg> legs = new ArrayList<>();
+        for (JourneyRoute route : routes) {
+            legs.addAll(route.getLegs());
+        }
+        if (legs.isEmpty()) {
+            return;
+        }
 
-    private boolean hasAdequateLuggageBuffer(JourneyRoute route, 
-                                           JourneyPreferences preferences) {
-        if (!preferences.isIncludeLuggageBuffer()) {
-            return true;
+        int[] trainIds = new int[legs.size()];
+        int[] stationIds = new int[legs.size()];
+        for (int i = 0; i < legs.size(); i++) {
+            trainIds[i] = legs.get(i).getTrainId();
+            stationIds[i] = legs.get(i).getSourceStationId();
+        }
+        int[] predictedDelays = delayPredictor.predictDelays(trainIds, stationIds);
+        metrics.add(PlannerMetrics.Counter.LEGS_PREDICTED, legs.size());
+        for (int i = 0; i < legs.size(); i++) {
+            legs.get(i).setPredictedDelay(predictedDelays[i]);
         }
-        
-        return route.getLegs().stream()
-            .allMatch(leg -> calculateTransferTime(leg, null) >= 15);
     }
 
-    private double calculateComfortScore(JourneyRoute route, 
-                                       JourneyPreferences preferences) {
+    private double calculateComfortScore(JourneyRoute route, ComfortTables tables) {
         double score = 0.0;
         
         for (JourneyLeg leg : route.getLegs()) {
-            // Train class comfort
-            score += getTrainClassComfortScore(leg.getTrainClass());
+            int trainId = leg.getTrainId();
+
+            // Train class comfort; trains outside the timetable fall back to their leg's class
+            score += tables.hasClassComfort(trainId)
+                ? tables.classComfort(trainId) : getTrainClassComfortScore(leg.getTrainClass());
             
             // Station facility comfort
-            score += facilityAnalyzer.getStationComfortScore(leg.getSourceStation());
-            score += facilityAnalyzer.getStationComfortScore(leg.getDestinationStation());
+            score += tables.stationComfort(leg.getSourceStationId());
+            score += tables.stationComfort(leg.getDestinationStationId());
             
             // Historical reliability
-            score += historicalAnalyzer.getTrainReliabilityScore(leg.getTrainNumber());
+            score += tables.reliability(trainId);
         }
         
         return score / route.getLegs().size();
     }
 
+    private void rebuildClassComfortScores(TimetableStore store) {
+        int[] trainIds = new int[store.getTrainCount()];
+        int size = 0;
+        for (int train = 0; train < trainIds.length; train++) {
+            trainIds[train] = IdDictionary.TRAINS.intern(store.getTrainNumber(train));
+            size = Math.max(size, trainIds[train] + 1);
+        }
+        double[] scores = classComfortScores.newTable(size);
+        for (int train = 0; train < trainIds.length; train++) {
+            scores[trainIds[train]] = getTrainClassComfortScore(store.getTrainClass(train));
+        }
+        classComfortScores.replace(scores);
+    }
+
     private double getTrainClassComfortScore(String trainClass) {
+        if (trainClass == null) {
+            return DEFAULT_CLASS_COMFORT;
+        }
         switch (trainClass) {
             case "1A": return 1.0;
             case "2A": return 0.8;
             case "3A": return 0.6;
             case "SL": return 0.4;
-            default: return 0.5;
+            default: return DEFAULT_CLASS_COMFORT;
         }
     }
 
-    private int calculateTransferTime(JourneyLeg currentLeg, JourneyLeg nextLeg) {
-        if (nextLeg == null) {
-            return 0;
+    // Score arrays by IdDictionary ID, captured once per COMFORT ranking
+    private static class ComfortTables {
+        private final ScoreTable classes;
+        private final ScoreTable stations;
+        private final ScoreTable trains;
+        private final double[] classComfort;
+        private final double[] stationComfort;
+        private final double[] reliability;
+
+        ComfortTables(ScoreTable classes, ScoreTable stations, ScoreTable trains) {
+            this.classes = classes;
+            this.stations = stations;
+            this.trains = trains;
+            this.classComfort = classes.snapshot();
+            this.stationComfort = stations.snapshot();
+            this.reliability = trains.snapshot();
+        }
+
+        boolean hasClassComfort(int trainId) {
+            return trainId >= 0 && trainId < classComfort.length;
+        }
+
+        double classComfort(int trainId) {
+            return classes.get(classComfort, trainId);
+        }
+
+        double stationComfort(int stationId) {
+            return stations.get(stationComfort, stationId);
+        }
+
+        double reliability(int trainId) {
+            return trains.get(reliability, trainId);
         }
-        
-        int arrivalTime = currentLeg.getArrivalTimeMinutes();
-        int departureTime = nextLeg.getDepartureTimeMinutes();
-        
-        return departureTime - arrivalTime;
     }
 
-    private List<JourneyLeg> findPossibleLegs(String station) {
-        // TODO: Implement actual train schedule lookup
-        return new ArrayList<>();
+    // Next departures from a station, each as a hop to the train's next stop
+    public List<JourneyLeg> findPossibleLegs(String station, int fromTimeMinutes, int limit) {
+        List<JourneyLeg> legs = new ArrayList<>();
+        RaptorPlanner planner = raptorPlanner;
+        if (planner == null) {
+            return legs;
+        }
+
+        TimetableStore store = planner.getStore();
+        int stationId = store.stationId(station);
+        if (stationId < 0) {
+            return legs;
+        }
+
+        int count = store.getDepartureCount(stationId);
+        for (int i = store.firstDepartureAt(stationId, fromTimeMinutes);
+                i < count && legs.size() < limit; i++) {
+            int stop = store.getStationDeparture(stationId, i);
+            legs.add(createLeg(store, stop, stop + 1));
+        }
+        return legs;
     }
 
+    // Re-prices each leg as its cheapest sequence of tickets on the same train;
+    // a leg split at intermediate stops becomes one leg per ticket. The route
+    // is left as it was and a re-priced copy returned.
     private List<JourneyRoute> findSplitTicketOptions(JourneyRoute route) {
-        // TODO: Implement split-ticketing logic
-        return Collections.singletonList(route);
+        SplitTicketOptimizer optimizer = splitTicketOptimizer;
+        if (optimizer == null || route.store != optimizer.getStore()) {
+            return Collections.singletonList(route);
+        }
+
+        TimetableStore store = route.store;
+        List<JourneyLeg> tickets = new ArrayList<>();
+        double totalCost = 0;
+        for (JourneyLeg leg : route.getLegs()) {
+            if (leg.boardStop < 0) {
+                tickets.add(leg.copy());
+                totalCost += leg.getFare();
+                continue;
+            }
+            int[] stops = optimizer.cheapestSplit(leg.boardStop, leg.alightStop);
+            for (int i = 0; i + 1 < stops.length; i++) {
+                JourneyLeg ticket = stops.length == 2
+                    ? leg.copy() : createLeg(store, stops[i], stops[i + 1]);
+                ticket.setFare(optimizer.farePaise(stops[i], stops[i + 1]) / 100.0);
+                tickets.add(ticket);
+                totalCost += ticket.getFare();
+            }
+        }
+        JourneyRoute split = new JourneyRoute(route.getSourceStation());
+        split.setLegs(tickets);
+        split.setTotalCost(totalCost);
+        split.setTotalDuration(route.getTotalDuration());
+        split.setComfortScore(route.getComfortScore());
+        split.store = store;
+        return Collections.singletonList(split);
     }
 
     public static class JourneyPreferences {
@@ -273,22 +868,45 @@ public class JourneyPlanner {
     }
 
     public static class JourneyRoute {
+        private final String sourceStation;
         private List<JourneyLeg> legs = new ArrayList<>();
         private double totalCost;
         private int totalDuration;
         private double comfortScore;
+        TimetableStore store; // timetable the legs' stop times refer to, if planned
 
         public JourneyRoute(String sourceStation) {
-            // Initialize with source station
+            this.sourceStation = sourceStation;
         }
 
+        // Copy with one more leg; the source comes from the route itself so
+        // extending an empty route works
         public JourneyRoute addLeg(JourneyLeg leg) {
-            JourneyRoute newRoute = new JourneyRoute(legs.get(0).getSourceStation());
-            newRoute.legs.addAll(this.legs);
+            JourneyRoute newRoute = new JourneyRoute(sourceStation);
+            newRoute.legs = new ArrayList<>(legs.size() + 1);
+            newRoute.legs.addAll(legs);
             newRoute.legs.add(leg);
+            newRoute.store = store;
             return newRoute;
         }
 
+        // Copy whose legs are copies too, so changing one route leaves the
+        // other as it was
+        JourneyRoute copy() {
+            JourneyRoute newRoute = new JourneyRoute(sourceStation);
+            newRoute.legs = new ArrayList<>(legs.size());
+            for (JourneyLeg leg : legs) {
+                newRoute.legs.add(leg.copy());
+            }
+            newRoute.totalCost = totalCost;
+            newRoute.totalDuration = totalDuration;
+            newRoute.comfortScore = comfortScore;
+            newRoute.store = store;
+            return newRoute;
+        }
+
+        public String getSourceStation() { return sourceStation; }
+
         public String getLastStation() {
             return legs.isEmpty() ? null : legs.get(legs.size() - 1).getDestinationStation();
         }
@@ -316,18 +934,47 @@ public class JourneyPlanner {
         private String trainName;
         private String sourceStation;
         private String destinationStation;
+        private int trainId = IdDictionary.UNKNOWN;
+        private int sourceStationId = IdDictionary.UNKNOWN;
+        private int destinationStationId = IdDictionary.UNKNOWN;
         private int departureTimeMinutes;
         private int arrivalTimeMinutes;
         private String platform;
         private double fare;
         private String trainClass;
         private int predictedDelay;
+        // Stop times in the planning timetable, or -1 for legs built elsewhere
+        int boardStop = -1;
+        int alightStop = -1;
+
+        JourneyLeg copy() {
+            JourneyLeg leg = new JourneyLeg();
+            leg.trainNumber = trainNumber;
+            leg.trainName = trainName;
+            leg.sourceStation = sourceStation;
+            leg.destinationStation = destinationStation;
+            leg.trainId = trainId;
+            leg.sourceStationId = sourceStationId;
+            leg.destinationStationId = destinationStationId;
+            leg.departureTimeMinutes = departureTimeMinutes;
+            leg.arrivalTimeMinutes = arrivalTimeMinutes;
+            leg.platform = platform;
+            leg.fare = fare;
+            leg.trainClass = trainClass;
+            leg.predictedDelay = predictedDelay;
+            leg.boardStop = boardStop;
+            leg.alightStop = alightStop;
+            return leg;
+        }
 
         // Getters and setters
         public String getTrainNumber() { return trainNumber; }
         public void setTrainNumber(String trainNumber) { 
             this.trainNumber = trainNumber; 
+            this.trainId = IdDictionary.TRAINS.intern(trainNumber);
         }
+
+        public int getTrainId() { return trainId; }
         
         public String getTrainName() { return trainName; }
         public void setTrainName(String trainName) { 
@@ -337,12 +984,18 @@ public class JourneyPlanner {
         public String getSourceStation() { return sourceStation; }
         public void setSourceStation(String sourceStation) { 
             this.sourceStation = sourceStation; 
+            this.sourceStationId = IdDictionary.STATIONS.intern(sourceStation);
         }
+
+        public int getSourceStationId() { return sourceStationId; }
         
         public String getDestinationStation() { return destinationStation; }
         public void setDestinationStation(String destinationStation) { 
             this.destinationStation = destinationStation; 
+            this.destinationStationId = IdDictionary.STATIONS.intern(destinationStation);
         }
+
+        public int getDestinationStationId() { return destinationStationId; }
         
         public int getDepartureTimeMinutes() { return departureTimeMinutes; }
         public void setDepartureTimeMinutes(int departureTimeMinutes) { 
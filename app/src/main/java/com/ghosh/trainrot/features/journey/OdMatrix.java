@@ -0,0 +1,56 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.*;
+
+// Duration, transfers and fare of the earliest-arriving journey for every
+// origin-destination pair of a batch; cells stay UNREACHABLE when there is none
+public class OdMatrix {
+    public static final int UNREACHABLE = -1;
+
+    private final List<String> sources;
+    private final List<String> destinations;
+    private final int[][] durations; // minutes from first departure to arrival
+    private final int[][] transfers;
+    private final int[][] fares; // paise
+
+    // Called once per row as soon as its origin has been searched. Calls are
+    // serialized but may come from any planner thread, in completion order.
+    public interface RowListener {
+        void onRow(OdMatrix matrix, int row);
+    }
+
+    OdMatrix(List<String> sources, List<String> destinations) {
+        this.sources = new ArrayList<>(sources);
+        this.destinations = new ArrayList<>(destinations);
+        this.durations = new int[sources.size()][destinations.size()];
+        this.transfers = new int[sources.size()][destinations.size()];
+        this.fares = new int[sources.size()][destinations.size()];
+        for (int row = 0; row < sources.size(); row++) {
+            Arrays.fill(durations[row], UNREACHABLE);
+            Arrays.fill(transfers[row], UNREACHABLE);
+            Arrays.fill(fares[row], UNREACHABLE);
+        }
+    }
+
+    void set(int row, int column, int duration, int transferCount, int farePaise) {
+        durations[row][column] = duration;
+        transfers[row][column] = transferCount;
+        fares[row][column] = farePaise;
+    }
+
+    public List<String> getSources() { return Collections.unmodifiableList(sources); }
+    public List<String> getDestinations() { return Collections.unmodifiableList(destinations); }
+
+    public boolean isReachable(int row, int column) {
+        return durations[row][column] != UNREACHABLE;
+    }
+
+    public int getDuration(int row, int column) { return durations[row][column]; }
+    public int getTransfers(int row, int column) { return transfers[row][column]; }
+    public int getFarePaise(int row, int column) { return fares[row][column]; }
+
+    public double getFare(int row, int column) {
+        int fare = fares[row][column];
+        return fare == UNREACHABLE ? UNREACHABLE : fare / 100.0;
+    }
+}
@@ -0,0 +1,173 @@
+package com.ghosh.trainrot.features.journey;
+
+import android.util.Log;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Per-stage latencies and candidate counts of planJourney. Queries record
+// into shared histograms and counters; snapshot() gives a consistent-enough
+// copy to query, merge or diff, and the periodic dump logs what happened
+// since the previous dump.
+public class PlannerMetrics {
+    private static final String TAG = "PlannerMetrics";
+
+    public enum Stage {
+        FILTERS,        // preferences turned into search constraints
+        FETCH,          // Pareto search and route materialization
+        OPTIMIZE,       // ranking for the mode, split tickets included
+        DELAY_PATTERNS, // batched delay prediction
+        TOTAL,          // whole query, cache hits included
+        REPLAN          // replan() after live delays, outside planJourney
+    }
+
+    public enum Counter {
+        QUERIES,
+        CACHE_HITS,
+        CANDIDATES_GENERATED, // Pareto routes found by the search
+        CANDIDATES_PRUNED,    // candidates dropped by the mode's ranking
+        LEGS_PREDICTED,
+        TRAINS_FILTERED_OUT   // trains excluded from the search by preferences
+    }
+
+    private final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+
+    private ScheduledExecutorService dumpExecutor;
+    private ScheduledFuture<?> dumpTask;
+    private Snapshot lastDump;
+
+    public PlannerMetrics() {
+        for (Stage stage : Stage.values()) {
+            latencies.put(stage, new LatencyHistogram());
+        }
+    }
+
+    public void recordNanos(Stage stage, long nanos) {
+        latencies.get(stage).recordNanos(nanos);
+    }
+
+    public void add(Counter counter, long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+    }
+
+    public void increment(Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        for (Stage stage : Stage.values()) {
+            snapshot.latencies.put(stage, latencies.get(stage).copy());
+        }
+        for (Counter counter : Counter.values()) {
+            snapshot.counters[counter.ordinal()] = counters.get(counter.ordinal());
+        }
+        return snapshot;
+    }
+
+    public synchronized void reset() {
+        for (LatencyHistogram histogram : latencies.values()) {
+            histogram.reset();
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+        lastDump = null;
+    }
+
+    // Logs the interval since the previous dump every period until stopped
+    public synchronized void startLogging(long period, TimeUnit unit) {
+        stopLogging();
+        if (dumpExecutor == null) {
+            dumpExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        lastDump = snapshot();
+        dumpTask = dumpExecutor.scheduleAtFixedRate(this::dump, period, period, unit);
+    }
+
+    public synchronized void stopLogging() {
+        if (dumpTask != null) {
+            dumpTask.cancel(false);
+            dumpTask = null;
+        }
+    }
+
+    private synchronized void dump() {
+        try {
+            Snapshot current = snapshot();
+            Snapshot interval = lastDump == null ? current : current.since(lastDump);
+            lastDump = current;
+            if (interval.getCount(Counter.QUERIES) == 0) {
+                return;
+            }
+            for (String line : interval.toString().split("\n")) {
+                Log.i(TAG, line);
+            }
+        } catch (Exception e) {
+            // A failed dump must not cancel the schedule
+            Log.e(TAG, "Metrics dump failed", e);
+        }
+    }
+
+    // Point-in-time copy of all metrics
+    public static class Snapshot {
+        private final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+        private final long[] counters = new long[Counter.values().length];
+
+        public LatencyHistogram getLatency(Stage stage) {
+            return latencies.get(stage).copy();
+        }
+
+        public long getCount(Counter counter) {
+            return counters[counter.ordinal()];
+        }
+
+        // Combined metrics of both snapshots, e.g. of several planner instances
+        public Snapshot merge(Snapshot other) {
+            Snapshot merged = new Snapshot();
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram histogram = latencies.get(stage).copy();
+                histogram.merge(other.latencies.get(stage));
+                merged.latencies.put(stage, histogram);
+            }
+            for (int i = 0; i < counters.length; i++) {
+                merged.counters[i] = counters[i] + other.counters[i];
+            }
+            return merged;
+        }
+
+        // What was recorded after the earlier snapshot of the same metrics
+        public Snapshot since(Snapshot earlier) {
+            Snapshot interval = new Snapshot();
+            for (Stage stage : Stage.values()) {
+                interval.latencies.put(stage,
+                    latencies.get(stage).since(earlier.latencies.get(stage)));
+            }
+            for (int i = 0; i < counters.length; i++) {
+                interval.counters[i] = Math.max(0, counters[i] - earlier.counters[i]);
+            }
+            return interval;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (Stage stage : Stage.values()) {
+                text.append(stage).append(": ").append(latencies.get(stage)).append('\n');
+            }
+            for (Counter counter : Counter.values()) {
+                text.append(counter).append('=').append(counters[counter.ordinal()]).append(' ');
+            }
+            return text.toString().trim();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Bounded cache of delay predictions by (train, history version). The model
+// sees only the train's history, so every station on a train shares one
+// entry. A train's version changes whenever its history does, so a lookup
+// with the current version never sees a prediction made from older inputs,
+// and other trains' entries stay valid. Two-way set-associative: a new train
+// goes to the front of its set and pushes the other entry out. Lookups are
+// lock-free and allocate nothing.
+public class PredictionCache {
+    public static final int MISS = Integer.MIN_VALUE;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong(); // misses on an older version
+    private final AtomicLong evictions = new AtomicLong();
+
+    public PredictionCache(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Invalid cache capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        this.slots = new AtomicReferenceArray<>(size < capacity ? size << 1 : size);
+        this.mask = slots.length() - 1;
+    }
+
+    // The cached delay in minutes, or MISS
+    public int get(int trainId, long version) {
+        int set = set(trainId);
+        Entry entry = slots.get(set);
+        if (entry == null || entry.trainId != trainId) {
+            entry = slots.get(set + 1);
+        }
+        if (entry != null && entry.trainId == trainId) {
+            if (entry.version == version) {
+                hits.incrementAndGet();
+                return entry.delay;
+            }
+            invalidations.incrementAndGet();
+        }
+        misses.incrementAndGet();
+        return MISS;
+    }
+
+    public void put(int trainId, long version, int delay) {
+        int set = set(trainId);
+        Entry entry = new Entry(trainId, version, delay);
+        Entry second = slots.get(set + 1);
+        if (second != null && second.trainId == trainId) {
+            slots.set(set + 1, entry);
+            return;
+        }
+        Entry first = slots.getAndSet(set, entry);
+        if (first == null || first.trainId == trainId) {
+            return;
+        }
+        // Racing puts may drop an entry here; that only costs a miss
+        slots.set(set + 1, first);
+        if (second != null) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+    }
+
+    public int getCapacity() { return slots.length(); }
+
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+    public long getInvalidationCount() { return invalidations.get(); }
+    public long getEvictionCount() { return evictions.get(); }
+
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0.0 : hitCount / (double) total;
+    }
+
+    // Index of the first of the set's two slots
+    private int set(int trainId) {
+        int hash = trainId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask & ~1;
+    }
+
+    private static class Entry {
+        final int trainId;
+        final long version;
+        final int delay;
+
+        Entry(int trainId, long version, int delay) {
+            this.trainId = trainId;
+            this.version = version;
+            this.delay = delay;
+        }
+    }
+}
@@ -0,0 +1,810 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Round-based multi-criteria search: round k scans every route touched in
+// round k-1 once and keeps Pareto bags over (arrival, legs, fare) per station.
+// Labels are int records in a per-thread arena linked by parent index, so the
+// search allocates nothing per label; journeys are only built for the target.
+// Goal-directed searches also drop labels that cannot reach the target soon
+// enough to join its bag, using the timetable's landmark lower bounds.
+public class RaptorPlanner {
+    // Rounds touching fewer routes are not worth forking
+    private static final int PARALLEL_ROUTE_THRESHOLD = 64;
+    private static final int ROUTES_PER_TASK = 16;
+
+    // Label record layout
+    private static final int ARRIVAL = 0;
+    private static final int LEGS = 1;
+    private static final int FARE = 2; // paise
+    private static final int PARENT = 3;
+    private static final int TRIP = 4;
+    private static final int BOARD = 5;
+    private static final int ALIGHT = 6;
+    private static final int LABEL_FIELDS = 7;
+    private static final int NO_LABEL = -1;
+
+    private final TimetableStore store;
+    private final ForkJoinPool pool; // null scans every round on the calling thread
+
+    // Trains sharing the same stop sequence, ordered by departure so that the
+    // earliest catchable trip at any stop can be binary searched
+    private final int routeCount;
+    private final IntBuffer routeStopStart;
+    private final IntBuffer routeStops;
+    private final IntBuffer routeTripStart;
+    private final IntBuffer routeTrips;
+
+    private final IntBuffer stationRouteStart;
+    private final IntBuffer stationRoutes;
+    private final IntBuffer stationRoutePositions;
+
+    private volatile boolean goalDirected;
+
+    private final ThreadLocal<Search> searches = ThreadLocal.withInitial(Search::new);
+    private final ThreadLocal<RouteBag> routeBags = ThreadLocal.withInitial(RouteBag::new);
+
+    public RaptorPlanner(TimetableStore store) {
+        this(store, null);
+    }
+
+    public RaptorPlanner(TimetableStore store, ForkJoinPool pool) {
+        this.store = store;
+        this.pool = pool;
+        this.routeCount = store.getRouteCount();
+        this.routeStopStart = store.routeStopStart;
+        this.routeStops = store.routeStops;
+        this.routeTripStart = store.routeTripStart;
+        this.routeTrips = store.routeTrips;
+        this.stationRouteStart = store.stationRouteStart;
+        this.stationRoutes = store.stationRoutes;
+        this.stationRoutePositions = store.stationRoutePositions;
+    }
+
+    public TimetableStore getStore() {
+        return store;
+    }
+
+    // Results are identical either way; only the number of labels differs.
+    // Searches with a maximum transfer time are always goal-directed.
+    public void setGoalDirected(boolean goalDirected) {
+        this.goalDirected = goalDirected;
+    }
+
+    public boolean isGoalDirected() {
+        return goalDirected;
+    }
+
+    public List<ConnectionScanner.Journey> findParetoJourneys(int source, int target,
+                                                             int departureTime, int maxLegs,
+                                                             int minTransferTime) {
+        return findParetoJourneys(source, target, departureTime, maxLegs,
+            SearchConstraints.withMinTransfer(minTransferTime));
+    }
+
+    // Constraints prune during route scans, so disallowed trains and transfers
+    // never produce labels
+    public List<ConnectionScanner.Journey> findParetoJourneys(int source, int target,
+                                                             int departureTime, int maxLegs,
+                                                             SearchConstraints constraints) {
+        return findParetoJourneys(new int[] {source}, new int[] {departureTime}, new int[] {0},
+            target, maxLegs, constraints);
+    }
+
+    // Searches from several stations at once, each entered at its own time
+    // with fare already spent, e.g. every stop still ahead on a delayed train.
+    // The first train from a seed is boarded without a transfer time.
+    public List<ConnectionScanner.Journey> findParetoJourneys(int[] seedStations,
+                                                             int[] seedTimes, int[] seedFares,
+                                                             int target, int maxLegs,
+                                                             SearchConstraints constraints) {
+        Search search = searches.get();
+        if (search.inUse) {
+            // A pool thread helping with a fork may run another query meanwhile
+            search = new Search();
+        }
+        search.inUse = true;
+        try {
+            search.run(seedStations, seedTimes, seedFares, target, maxLegs, constraints);
+            // Bag order depends on the order routes were scanned in, so
+            // order by legs, then arrival, then fare instead. Seeds at the
+            // target are not journeys.
+            int[] data = search.arena.data;
+            List<Integer> labels = new ArrayList<>(search.best.sizes[target]);
+            for (int i = 0; i < search.best.sizes[target]; i++) {
+                int label = search.best.labels[target][i];
+                if (data[label * LABEL_FIELDS + LEGS] > 0) {
+                    labels.add(label);
+                }
+            }
+            labels.sort(Comparator.comparingInt((Integer l) -> data[l * LABEL_FIELDS + LEGS])
+                .thenComparingInt(l -> data[l * LABEL_FIELDS + ARRIVAL])
+                .thenComparingInt(l -> data[l * LABEL_FIELDS + FARE]));
+            List<ConnectionScanner.Journey> journeys = new ArrayList<>(labels.size());
+            for (int label : labels) {
+                journeys.add(toJourney(search.arena, label));
+            }
+            return journeys;
+        } finally {
+            search.reset();
+            search.inUse = false;
+        }
+    }
+
+    private ConnectionScanner.Journey toJourney(LabelArena arena, int label) {
+        int[] data = arena.data;
+        ConnectionScanner.Journey journey =
+            new ConnectionScanner.Journey(data[label * LABEL_FIELDS + LEGS]);
+        for (int l = label; data[l * LABEL_FIELDS + PARENT] != NO_LABEL;
+                l = data[l * LABEL_FIELDS + PARENT]) {
+            int base = l * LABEL_FIELDS;
+            int firstStop = store.getFirstStop(data[base + TRIP]);
+            journey.boardStop[data[base + LEGS] - 1] = firstStop + data[base + BOARD];
+            journey.alightStop[data[base + LEGS] - 1] = firstStop + data[base + ALIGHT];
+        }
+        return journey;
+    }
+
+    // Per-thread query state, reset rather than reallocated between queries
+    private class Search implements LabelSink {
+        final LabelArena arena = new LabelArena();
+        BagSet best;
+        BagSet previousRound;
+        BagSet currentRound;
+        final boolean[] marked;
+        final TimetableStore.IntList markedStations = new TimetableStore.IntList();
+        final int[] routeFirstPosition;
+        final TimetableStore.IntList queuedRoutes = new TimetableStore.IntList();
+        private final Bounds lowerBounds;
+        Bounds bounds; // lowerBounds when goal-directed, else null
+        int target;
+        boolean inUse;
+
+        Search() {
+            int stations = store.getStationCount();
+            best = new BagSet(store);
+            previousRound = new BagSet(store);
+            currentRound = new BagSet(store);
+            marked = new boolean[stations];
+            routeFirstPosition = new int[routeCount];
+            Arrays.fill(routeFirstPosition, Integer.MAX_VALUE);
+            lowerBounds = new Bounds(stations);
+        }
+
+        void run(int[] seedStations, int[] seedTimes, int[] seedFares, int target, int maxLegs,
+                 SearchConstraints constraints) {
+            this.target = target;
+            best.setTransferWindow(constraints, target);
+            previousRound.setTransferWindow(constraints, target);
+            currentRound.setTransferWindow(constraints, target);
+            bounds = null;
+            // Bags under a transfer window keep far more labels, so those
+            // searches always prune with the bounds
+            boolean transferWindow = constraints.getMaxTransferTime() != SearchConstraints.NO_LIMIT;
+            if ((goalDirected || transferWindow) && target >= 0) {
+                if (store.getLandmarkCount() > 0) {
+                    store.rideTimeLowerBounds(target, lowerBounds.rideTime);
+                    store.fareLowerBounds(target, lowerBounds.fare);
+                } else {
+                    Arrays.fill(lowerBounds.rideTime, 0);
+                    Arrays.fill(lowerBounds.fare, 0);
+                }
+                fillLegBounds(target, maxLegs);
+                lowerBounds.transferTime = constraints.getMinTransferTime();
+                lowerBounds.maxLegs = maxLegs;
+                bounds = lowerBounds;
+            }
+            for (int i = 0; i < seedStations.length; i++) {
+                int station = seedStations[i];
+                if (best.dominates(station, seedTimes[i], 0, seedFares[i], arena)) {
+                    continue;
+                }
+                int origin = arena.add(seedTimes[i], 0, seedFares[i], NO_LABEL, -1, -1, -1);
+                best.add(station, origin, arena);
+                previousRound.add(station, origin, arena);
+                if (!marked[station]) {
+                    marked[station] = true;
+                    markedStations.add(station);
+                }
+            }
+
+            for (int k = 1; k <= maxLegs && markedStations.size() > 0; k++) {
+                for (int m = 0; m < markedStations.size(); m++) {
+                    int station = markedStations.get(m);
+                    marked[station] = false;
+                    for (int i = stationRouteStart.get(station); i < stationRouteStart.get(station + 1); i++) {
+                        int route = stationRoutes.get(i);
+                        int position = stationRoutePositions.get(i);
+                        if (routeFirstPosition[route] == Integer.MAX_VALUE) {
+                            queuedRoutes.add(route);
+                        }
+                        routeFirstPosition[route] = Math.min(routeFirstPosition[route], position);
+                    }
+                }
+                markedStations.clear();
+
+                if (pool != null && queuedRoutes.size() >= PARALLEL_ROUTE_THRESHOLD) {
+                    scanRoutesInParallel(k, constraints);
+                } else {
+                    RouteBag routeBag = routeBags.get();
+                    for (int i = 0; i < queuedRoutes.size(); i++) {
+                        int route = queuedRoutes.get(i);
+                        scanRoute(route, routeFirstPosition[route], k, constraints, target,
+                            bounds, arena, best, previousRound, routeBag, this);
+                    }
+                }
+                for (int i = 0; i < queuedRoutes.size(); i++) {
+                    routeFirstPosition[queuedRoutes.get(i)] = Integer.MAX_VALUE;
+                }
+                queuedRoutes.clear();
+
+                BagSet swap = previousRound;
+                previousRound = currentRound;
+                currentRound = swap;
+                currentRound.clear();
+            }
+        }
+
+        // Fewest trains from every station to the target, found backwards
+        // along the routes up to maxLegs deep; farther stations keep maxLegs + 1
+        private void fillLegBounds(int target, int maxLegs) {
+            int[] legs = lowerBounds.legs;
+            Arrays.fill(legs, maxLegs + 1);
+            legs[target] = 0;
+            TimetableStore.IntList frontier = markedStations;
+            frontier.add(target);
+            for (int k = 1; k <= maxLegs && frontier.size() > 0; k++) {
+                // A station reaches the frontier by boarding before the
+                // frontier's last position on some route through it
+                for (int m = 0; m < frontier.size(); m++) {
+                    int station = frontier.get(m);
+                    for (int i = stationRouteStart.get(station); i < stationRouteStart.get(station + 1); i++) {
+                        int route = stationRoutes.get(i);
+                        int position = stationRoutePositions.get(i);
+                        if (routeFirstPosition[route] == Integer.MAX_VALUE) {
+                            queuedRoutes.add(route);
+                            routeFirstPosition[route] = position;
+                        } else {
+                            routeFirstPosition[route] = Math.max(routeFirstPosition[route], position);
+                        }
+                    }
+                }
+                frontier.clear();
+                for (int i = 0; i < queuedRoutes.size(); i++) {
+                    int route = queuedRoutes.get(i);
+                    int stopStart = routeStopStart.get(route);
+                    for (int p = 0; p < routeFirstPosition[route]; p++) {
+                        int station = routeStops.get(stopStart + p);
+                        if (legs[station] > k) {
+                            legs[station] = k;
+                            frontier.add(station);
+                        }
+                    }
+                    routeFirstPosition[route] = Integer.MAX_VALUE;
+                }
+                queuedRoutes.clear();
+            }
+            frontier.clear();
+        }
+
+        // Route scans within a round only read the previous round, so they can
+        // run concurrently. Their labels are then offered in queue order,
+        // re-checking target dominance, which reproduces the sequential result.
+        private void scanRoutesInParallel(int legs, SearchConstraints constraints) {
+            int count = queuedRoutes.size();
+            int[] routes = new int[count];
+            int[] firstPositions = new int[count];
+            for (int i = 0; i < count; i++) {
+                routes[i] = queuedRoutes.get(i);
+                firstPositions[i] = routeFirstPosition[routes[i]];
+            }
+            LabelBuffer[] buffers = new LabelBuffer[count];
+            pool.invoke(new ScanTask(this, routes, firstPositions, 0, count, legs, constraints,
+                buffers));
+            for (LabelBuffer buffer : buffers) {
+                if (buffer != null) {
+                    buffer.drainTo(this);
+                }
+            }
+        }
+
+        @Override
+        public void offer(int station, int arrival, int legs, int fare, int parent,
+                          int trip, int board, int alight) {
+            if (cannotImprove(target, bounds, best, arena, station, arrival, legs, fare, true)) {
+                return;
+            }
+            int label = arena.add(arrival, legs, fare, parent, trip, board, alight);
+            if (!best.add(station, label, arena)) {
+                arena.removeLast();
+                return;
+            }
+            // Nothing in the round can dominate a label the best bag took
+            currentRound.insert(station, label, arena);
+            if (!marked[station]) {
+                marked[station] = true;
+                markedStations.add(station);
+            }
+        }
+
+        void reset() {
+            arena.clear();
+            best.clear();
+            previousRound.clear();
+            currentRound.clear();
+            for (int m = 0; m < markedStations.size(); m++) {
+                marked[markedStations.get(m)] = false;
+            }
+            markedStations.clear();
+            for (int i = 0; i < queuedRoutes.size(); i++) {
+                routeFirstPosition[queuedRoutes.get(i)] = Integer.MAX_VALUE;
+            }
+            queuedRoutes.clear();
+        }
+    }
+
+    // Whether a label at the station can only lead to labels the target's bag
+    // already dominates. With bounds, the rest of the way adds at least the
+    // station's ride time and fare bounds, and once off a train also a
+    // transfer and another leg; stations more trains away from the target
+    // than the legs left cannot lead there at all.
+    private static boolean cannotImprove(int target, Bounds bounds, BagSet best, LabelArena arena,
+                                         int station, int arrival, int legs, int fare,
+                                         boolean alighted) {
+        if (target < 0) {
+            return false;
+        }
+        if (bounds != null) {
+            int rideTime = bounds.rideTime[station];
+            if (rideTime == TimetableStore.NO_PATH) {
+                return true;
+            }
+            // Boarding counts the trip about to be taken as one of the legs
+            int taken = alighted ? legs : legs - 1;
+            if (taken + bounds.legs[station] > bounds.maxLegs) {
+                return true;
+            }
+            arrival += rideTime;
+            fare += bounds.fare[station];
+            if (alighted && station != target) {
+                arrival += bounds.transferTime;
+                legs++;
+            }
+        }
+        return best.dominates(target, arrival, legs, fare, arena);
+    }
+
+    private void scanRoute(int route, int firstPosition, int legs,
+                           SearchConstraints constraints, int target, Bounds bounds,
+                           LabelArena arena, BagSet best, BagSet previousRound,
+                           RouteBag routeBag, LabelSink sink) {
+        int stopStart = routeStopStart.get(route);
+        int stopCount = routeStopStart.get(route + 1) - stopStart;
+        int transfer = legs == 1 ? 0 : constraints.getMinTransferTime();
+        int[] data = arena.data;
+        routeBag.clear();
+
+        for (int p = firstPosition; p < stopCount; p++) {
+            int station = routeStops.get(stopStart + p);
+
+            for (int r = 0; r < routeBag.size; r++) {
+                int trip = routeBag.trips[r];
+                int parent = routeBag.parents[r];
+                int arrival = arrival(trip, p) + constraints.getDelay(trip);
+                int fare = data[parent * LABEL_FIELDS + FARE] + fare(trip, routeBag.boards[r], p);
+                if (cannotImprove(target, bounds, best, arena, station, arrival, legs, fare, true)) {
+                    continue;
+                }
+                sink.offer(station, arrival, legs, fare, parent, trip, routeBag.boards[r], p);
+                // The sink may have grown the arena
+                data = arena.data;
+            }
+
+            int boardingCount = previousRound.sizes[station];
+            if (boardingCount == 0 || p == stopCount - 1) {
+                continue;
+            }
+            int[] boarding = previousRound.labels[station];
+            for (int b = 0; b < boardingCount; b++) {
+                int label = boarding[b];
+                int labelArrival = data[label * LABEL_FIELDS + ARRIVAL];
+                int labelFare = data[label * LABEL_FIELDS + FARE];
+                if (cannotImprove(target, bounds, best, arena, station, labelArrival + transfer,
+                        legs, labelFare, false)) {
+                    continue;
+                }
+                if (constraints.getMaxTransferTime() != SearchConstraints.NO_LIMIT) {
+                    boardInWindow(route, p, label, legs, constraints, arena, routeBag);
+                    continue;
+                }
+                int trip = earliestTrip(route, p, labelArrival + transfer, constraints);
+                if (trip >= 0) {
+                    board(trip, p, label, arena, routeBag);
+                }
+            }
+        }
+    }
+
+    // Boards the trip unless a label already riding it paid no more to its start
+    private void board(int trip, int position, int label, LabelArena arena, RouteBag routeBag) {
+        int[] data = arena.data;
+        int fare = data[label * LABEL_FIELDS + FARE] - fare(trip, 0, position);
+        for (int r = 0; r < routeBag.size; r++) {
+            if (routeBag.trips[r] == trip
+                    && data[routeBag.parents[r] * LABEL_FIELDS + FARE]
+                        - fare(trip, 0, routeBag.boards[r]) <= fare) {
+                return;
+            }
+        }
+        routeBag.add(trip, position, label);
+    }
+
+    // Under a maximum transfer time a later trip may reach the next transfer
+    // in its window where the earliest arrives too soon, so the label boards
+    // every trip leaving within its window. The first train from a seed may
+    // leave any time after it.
+    private void boardInWindow(int route, int position, int label, int legs,
+                               SearchConstraints constraints, LabelArena arena,
+                               RouteBag routeBag) {
+        int labelArrival = arena.data[label * LABEL_FIELDS + ARRIVAL];
+        int earliest = legs == 1 ? labelArrival : labelArrival + constraints.getMinTransferTime();
+        long latest = legs == 1 ? Long.MAX_VALUE
+            : (long) labelArrival + constraints.getMaxTransferTime();
+        int end = routeTripStart.get(route + 1);
+        for (int i = firstTripIndex(route, position, earliest - constraints.getMaxDelay());
+                i < end; i++) {
+            int trip = routeTrips.get(i);
+            int departure = departure(trip, position);
+            if (departure > latest) {
+                break;
+            }
+            departure += constraints.getDelay(trip);
+            if (departure >= earliest && departure <= latest && constraints.allowsTrain(trip)) {
+                board(trip, position, label, arena, routeBag);
+            }
+        }
+    }
+
+    // Index in routeTrips of the route's first trip scheduled to leave the
+    // position at or after the time
+    private int firstTripIndex(int route, int position, int scheduled) {
+        int low = routeTripStart.get(route);
+        int high = routeTripStart.get(route + 1);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (departure(routeTrips.get(mid), position) < scheduled) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int earliestTrip(int route, int position, int time, SearchConstraints constraints) {
+        int end = routeTripStart.get(route + 1);
+        // A trip scheduled up to the largest delay earlier may still be running late enough
+        int low = firstTripIndex(route, position, time - constraints.getMaxDelay());
+        if (!constraints.hasDelays()) {
+            while (low < end && !constraints.allowsTrain(routeTrips.get(low))) {
+                low++;
+            }
+            return low < end ? routeTrips.get(low) : -1;
+        }
+
+        // Delays can reorder departures; take the first actual departure, which
+        // no trip scheduled after it can beat
+        int best = -1;
+        int bestDeparture = Integer.MAX_VALUE;
+        for (int i = low; i < end; i++) {
+            int trip = routeTrips.get(i);
+            int departure = departure(trip, position);
+            if (departure >= bestDeparture) {
+                break;
+            }
+            int actual = departure + constraints.getDelay(trip);
+            if (actual >= time && actual < bestDeparture && constraints.allowsTrain(trip)) {
+                best = trip;
+                bestDeparture = actual;
+            }
+        }
+        return best;
+    }
+
+    private int departure(int trip, int position) {
+        return store.getDeparture(store.getFirstStop(trip) + position);
+    }
+
+    private int arrival(int trip, int position) {
+        return store.getArrival(store.getFirstStop(trip) + position);
+    }
+
+    private int fare(int trip, int from, int to) {
+        int firstStop = store.getFirstStop(trip);
+        return store.getFarePaise(firstStop + to) - store.getFarePaise(firstStop + from);
+    }
+
+    private interface LabelSink {
+        void offer(int station, int arrival, int legs, int fare, int parent,
+                   int trip, int board, int alight);
+    }
+
+    // Growable array of label records; indexes stay valid until clear()
+    private static class LabelArena {
+        int[] data = new int[1024 * LABEL_FIELDS];
+        int size;
+
+        int add(int arrival, int legs, int fare, int parent, int trip, int board, int alight) {
+            int base = size * LABEL_FIELDS;
+            if (base == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[base + ARRIVAL] = arrival;
+            data[base + LEGS] = legs;
+            data[base + FARE] = fare;
+            data[base + PARENT] = parent;
+            data[base + TRIP] = trip;
+            data[base + BOARD] = board;
+            data[base + ALIGHT] = alight;
+            return size++;
+        }
+
+        void removeLast() {
+            size--;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    // Lower bounds towards the target of a goal-directed search
+    private static class Bounds {
+        final int[] rideTime;
+        final int[] fare;
+        final int[] legs;
+        int transferTime;
+        int maxLegs;
+
+        Bounds(int stations) {
+            rideTime = new int[stations];
+            fare = new int[stations];
+            legs = new int[stations];
+        }
+    }
+
+    // Pareto bag of label indexes per station; only touched stations are cleared.
+    // Under a maximum transfer time an earlier label may miss a departure a
+    // later one can still make, so away from the target a label off a train
+    // only dominates a later one if no train leaves between the ends of their
+    // windows. Seeds may wait for any train and dominate as usual.
+    private static class BagSet {
+        final int[][] labels;
+        final int[] sizes;
+        private final int[] touched;
+        private int touchedCount;
+        private final TimetableStore store;
+        private int maxTransferTime = SearchConstraints.NO_LIMIT;
+        private int maxDelay;
+        private int target = NO_LABEL;
+
+        BagSet(TimetableStore store) {
+            int stations = store.getStationCount();
+            labels = new int[stations][];
+            sizes = new int[stations];
+            touched = new int[stations];
+            this.store = store;
+        }
+
+        void setTransferWindow(SearchConstraints constraints, int target) {
+            this.maxTransferTime = constraints.getMaxTransferTime();
+            this.maxDelay = constraints.getMaxDelay();
+            this.target = target;
+        }
+
+        boolean dominates(int station, int arrival, int legs, int fare, LabelArena arena) {
+            int[] bag = labels[station];
+            int[] data = arena.data;
+            // Of the earlier labels off a train, the latest arriving covers the most
+            int latestArrival = Integer.MIN_VALUE;
+            for (int i = 0; i < sizes[station]; i++) {
+                int base = bag[i] * LABEL_FIELDS;
+                int other = data[base + ARRIVAL];
+                if (other > arrival || data[base + LEGS] > legs || data[base + FARE] > fare) {
+                    continue;
+                }
+                if (other == arrival || data[base + LEGS] == 0 || !windowed(station)) {
+                    return true;
+                }
+                latestArrival = Math.max(latestArrival, other);
+            }
+            return latestArrival != Integer.MIN_VALUE
+                && (long) arrival + maxTransferTime < nextDepartureAfterWindow(station, latestArrival);
+        }
+
+        private boolean windowed(int station) {
+            return maxTransferTime != SearchConstraints.NO_LIMIT && station != target;
+        }
+
+        // Scheduled time of the first train from the station that may leave
+        // after the arrival's transfer window, allowing for it running late.
+        // A later arrival with no train between the ends of the two windows
+        // can make no more departures than this one.
+        private long nextDepartureAfterWindow(int station, int arrival) {
+            long windowEnd = (long) arrival + maxTransferTime - maxDelay;
+            int next = store.firstDepartureAt(station, (int) Math.min(windowEnd + 1, Integer.MAX_VALUE));
+            return next == store.getDepartureCount(station)
+                ? Long.MAX_VALUE : store.getDeparture(store.getStationDeparture(station, next));
+        }
+
+        // Adds the label unless dominated, evicting the labels it dominates
+        // while keeping insertion order
+        boolean add(int station, int label, LabelArena arena) {
+            int[] data = arena.data;
+            int base = label * LABEL_FIELDS;
+            int arrival = data[base + ARRIVAL];
+            int legs = data[base + LEGS];
+            int fare = data[base + FARE];
+            if (dominates(station, arrival, legs, fare, arena)) {
+                return false;
+            }
+            insert(station, label, arena);
+            return true;
+        }
+
+        // Adds a label nothing in the bag dominates, evicting those it dominates
+        void insert(int station, int label, LabelArena arena) {
+            int[] data = arena.data;
+            int base = label * LABEL_FIELDS;
+            int arrival = data[base + ARRIVAL];
+            int legs = data[base + LEGS];
+            int fare = data[base + FARE];
+            int[] bag = labels[station];
+            int size = sizes[station];
+            if (bag == null) {
+                bag = new int[4];
+                labels[station] = bag;
+            }
+            if (size == 0) {
+                touched[touchedCount++] = station;
+            }
+            boolean windowed = legs > 0 && windowed(station);
+            long nextDeparture = -1; // looked up once a later label needs it
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int other = bag[i] * LABEL_FIELDS;
+                int otherArrival = data[other + ARRIVAL];
+                boolean dominated = arrival <= otherArrival && legs <= data[other + LEGS]
+                    && fare <= data[other + FARE];
+                if (dominated && windowed && arrival != otherArrival) {
+                    if (nextDeparture < 0) {
+                        nextDeparture = nextDepartureAfterWindow(station, arrival);
+                    }
+                    dominated = (long) otherArrival + maxTransferTime < nextDeparture;
+                }
+                if (!dominated) {
+                    bag[kept++] = bag[i];
+                }
+            }
+            if (kept == bag.length) {
+                bag = Arrays.copyOf(bag, kept * 2);
+                labels[station] = bag;
+            }
+            bag[kept++] = label;
+            sizes[station] = kept;
+        }
+
+        void clear() {
+            for (int i = 0; i < touchedCount; i++) {
+                sizes[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+
+    // Trips being ridden along one route scan, with their boarding label
+    private static class RouteBag {
+        int[] trips = new int[16];
+        int[] boards = new int[16];
+        int[] parents = new int[16];
+        int size;
+
+        void add(int trip, int board, int parent) {
+            if (size == trips.length) {
+                trips = Arrays.copyOf(trips, size * 2);
+                boards = Arrays.copyOf(boards, size * 2);
+                parents = Arrays.copyOf(parents, size * 2);
+            }
+            trips[size] = trip;
+            boards[size] = board;
+            parents[size] = parent;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    // Labels produced by a parallel scan, replayed into the search afterwards
+    private static class LabelBuffer implements LabelSink {
+        private static final int FIELDS = 8;
+        private int[] records = new int[64 * FIELDS];
+        private int size;
+
+        @Override
+        public void offer(int station, int arrival, int legs, int fare, int parent,
+                          int trip, int board, int alight) {
+            int base = size * FIELDS;
+            if (base == records.length) {
+                records = Arrays.copyOf(records, records.length * 2);
+            }
+            records[base] = station;
+            records[base + 1] = arrival;
+            records[base + 2] = legs;
+            records[base + 3] = fare;
+            records[base + 4] = parent;
+            records[base + 5] = trip;
+            records[base + 6] = board;
+            records[base + 7] = alight;
+            size++;
+        }
+
+        void drainTo(LabelSink sink) {
+            for (int i = 0; i < size; i++) {
+                int base = i * FIELDS;
+                sink.offer(records[base], records[base + 1], records[base + 2], records[base + 3],
+                    records[base + 4], records[base + 5], records[base + 6], records[base + 7]);
+            }
+        }
+    }
+
+    // Splits a round's queued routes in halves down to ROUTES_PER_TASK; each
+    // leaf buffers its labels at its first index so the merge keeps queue order
+    private class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Search search;
+        private final int[] routes;
+        private final int[] firstPositions;
+        private final int from;
+        private final int to;
+        private final int legs;
+        private final SearchConstraints constraints;
+        private final LabelBuffer[] buffers;
+
+        ScanTask(Search search, int[] routes, int[] firstPositions, int from, int to, int legs,
+                 SearchConstraints constraints, LabelBuffer[] buffers) {
+            this.search = search;
+            this.routes = routes;
+            this.firstPositions = firstPositions;
+            this.from = from;
+            this.to = to;
+            this.legs = legs;
+            this.constraints = constraints;
+            this.buffers = buffers;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ROUTES_PER_TASK) {
+                LabelBuffer buffer = new LabelBuffer();
+                RouteBag routeBag = routeBags.get();
+                for (int i = from; i < to; i++) {
+                    scanRoute(routes[i], firstPositions[i], legs, constraints, search.target,
+                        search.bounds, search.arena, search.best, search.previousRound, routeBag,
+                        buffer);
+                }
+                buffers[from] = buffer;
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                new ScanTask(search, routes, firstPositions, from, middle, legs, constraints, buffers),
+                new ScanTask(search, routes, firstPositions, middle, to, legs, constraints, buffers));
+        }
+    }
+}
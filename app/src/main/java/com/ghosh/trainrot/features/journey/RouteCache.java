@@ -0,0 +1,162 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded LRU cache of planned routes with a time-to-live per entry. Keys
+// carry the timetable version and delay epoch, so entries computed against
+// older data are never returned and simply age out. Routes are copied in
+// and out, legs included, since callers go on to annotate them.
+public class RouteCache {
+    private final int capacity;
+    private final long ttlNanos;
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public RouteCache(int capacity, long ttl, TimeUnit unit) {
+        this.capacity = capacity;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > RouteCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public List<JourneyPlanner.JourneyRoute> get(Key key) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && System.nanoTime() - entry.createdAt > ttlNanos) {
+                entries.remove(key);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(entry.routes);
+    }
+
+    public void put(Key key, List<JourneyPlanner.JourneyRoute> routes) {
+        Entry entry = new Entry(copy(routes), System.nanoTime());
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+    public long getEvictionCount() { return evictions.get(); }
+    public long getExpirationCount() { return expirations.get(); }
+
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0.0 : hitCount / (double) total;
+    }
+
+    private static List<JourneyPlanner.JourneyRoute> copy(List<JourneyPlanner.JourneyRoute> routes) {
+        List<JourneyPlanner.JourneyRoute> copies = new ArrayList<>(routes.size());
+        for (JourneyPlanner.JourneyRoute route : routes) {
+            copies.add(route.copy());
+        }
+        return copies;
+    }
+
+    private static class Entry {
+        final List<JourneyPlanner.JourneyRoute> routes;
+        final long createdAt;
+
+        Entry(List<JourneyPlanner.JourneyRoute> routes, long createdAt) {
+            this.routes = routes;
+            this.createdAt = createdAt;
+        }
+    }
+
+    // Snapshot of a query; preferences are copied so later mutation of the
+    // caller's object cannot alias a cached entry
+    public static final class Key {
+        private final String source;
+        private final String destination;
+        private final int departureTime;
+        private final JourneyPlanner.OptimizationMode mode;
+        private final int minTransferTime;
+        private final int maxTransferTime;
+        private final List<String> trainClasses;
+        private final boolean luggageBuffer;
+        private final long timetableVersion;
+        private final long delayEpoch;
+        private final int hash;
+
+        public Key(String source, String destination, int departureTime,
+                   JourneyPlanner.OptimizationMode mode,
+                   JourneyPlanner.JourneyPreferences preferences,
+                   long timetableVersion, long delayEpoch) {
+            this.source = source;
+            this.destination = destination;
+            this.departureTime = departureTime;
+            this.mode = mode;
+            this.minTransferTime = preferences.getMinTransferTime();
+            this.maxTransferTime = preferences.getMaxTransferTime();
+            // Class order and duplicates do not change the result
+            List<String> classes = preferences.getPreferredTrainClasses() == null
+                ? new ArrayList<>()
+                : new ArrayList<>(new TreeSet<>(preferences.getPreferredTrainClasses()));
+            this.trainClasses = Collections.unmodifiableList(classes);
+            this.luggageBuffer = preferences.isIncludeLuggageBuffer();
+            this.timetableVersion = timetableVersion;
+            this.delayEpoch = delayEpoch;
+            this.hash = Objects.hash(source, destination, departureTime, mode, minTransferTime,
+                maxTransferTime, trainClasses, luggageBuffer, timetableVersion, delayEpoch);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hash == key.hash
+                && departureTime == key.departureTime
+                && minTransferTime == key.minTransferTime
+                && maxTransferTime == key.maxTransferTime
+                && luggageBuffer == key.luggageBuffer
+                && timetableVersion == key.timetableVersion
+                && delayEpoch == key.delayEpoch
+                && mode == key.mode
+                && Objects.equals(source, key.source)
+                && Objects.equals(destination, key.destination)
+                && trainClasses.equals(key.trainClasses);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.Arrays;
+
+// Dense scores by IdDictionary ID with a default for IDs never scored.
+// Readers take the current array and index it directly. Writers update it in
+// place and re-publish it through the volatile field, growing it geometrically
+// for new IDs, so a snapshot may see scores set after it was taken.
+public final class ScoreTable {
+    private final double defaultScore;
+    private volatile double[] scores = new double[0];
+
+    public ScoreTable(double defaultScore) {
+        this.defaultScore = defaultScore;
+    }
+
+    public double get(int id) {
+        return get(scores, id);
+    }
+
+    public double getDefaultScore() {
+        return defaultScore;
+    }
+
+    // Current scores; callers must not modify the array
+    double[] snapshot() {
+        return scores;
+    }
+
+    double get(double[] snapshot, int id) {
+        return id < 0 || id >= snapshot.length ? defaultScore : snapshot[id];
+    }
+
+    public synchronized void set(int id, double score) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Invalid id " + id);
+        }
+        double[] current = scores;
+        if (id >= current.length) {
+            double[] grown = Arrays.copyOf(current, Math.max(id + 1, current.length * 2));
+            Arrays.fill(grown, current.length, grown.length, defaultScore);
+            current = grown;
+        }
+        current[id] = score;
+        scores = current;
+    }
+
+    // Replaces every score; unset slots of the array must hold the default.
+    // Hold this table's lock from reading the source to the replace, or a
+    // set in between is lost
+    public synchronized void replace(double[] rebuilt) {
+        scores = rebuilt;
+    }
+
+    // Array of the given size filled with the default, for building a replacement
+    public double[] newTable(int size) {
+        double[] table = new double[Math.max(0, size)];
+        Arrays.fill(table, defaultScore);
+        return table;
+    }
+}
@@ -0,0 +1,80 @@
+package com.ghosh.trainrot.features.journey;
+
+// Journey preferences in the form the search engines prune on: a transfer
+// window and the set of trains that may be boarded. Live delays, when set,
+// shift every stop time of a train; only RAPTOR applies them.
+public class SearchConstraints {
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    private final int minTransferTime;
+    private final int maxTransferTime;
+    private final boolean[] allowedTrains; // by timetable train index; null allows all
+    private final int[] delays; // minutes late by timetable train index; null if none
+    private final int maxDelay;
+
+    public SearchConstraints(int minTransferTime, int maxTransferTime, boolean[] allowedTrains) {
+        this(minTransferTime, maxTransferTime, allowedTrains, null);
+    }
+
+    public SearchConstraints(int minTransferTime, int maxTransferTime, boolean[] allowedTrains,
+                             int[] delays) {
+        this.minTransferTime = minTransferTime;
+        this.maxTransferTime = maxTransferTime;
+        this.allowedTrains = allowedTrains;
+        this.delays = delays;
+        int max = 0;
+        if (delays != null) {
+            for (int delay : delays) {
+                if (delay < 0) {
+                    throw new IllegalArgumentException("Negative delay " + delay);
+                }
+                max = Math.max(max, delay);
+            }
+        }
+        this.maxDelay = max;
+    }
+
+    public static SearchConstraints withMinTransfer(int minTransferTime) {
+        return new SearchConstraints(minTransferTime, NO_LIMIT, null);
+    }
+
+    public SearchConstraints withDelays(int[] trainDelays) {
+        return new SearchConstraints(minTransferTime, maxTransferTime, allowedTrains, trainDelays);
+    }
+
+    public int getMinTransferTime() { return minTransferTime; }
+    public int getMaxTransferTime() { return maxTransferTime; }
+
+    public boolean hasDelays() {
+        return maxDelay > 0;
+    }
+
+    public int getMaxDelay() { return maxDelay; }
+
+    public int getDelay(int train) {
+        return delays == null ? 0 : delays[train];
+    }
+
+    public int getExcludedTrainCount() {
+        if (allowedTrains == null) {
+            return 0;
+        }
+        int excluded = 0;
+        for (boolean allowed : allowedTrains) {
+            if (!allowed) {
+                excluded++;
+            }
+        }
+        return excluded;
+    }
+
+    public boolean allowsTrain(int train) {
+        return allowedTrains == null || allowedTrains[train];
+    }
+
+    // Wait is measured from arrival at the transfer station to departure
+    public boolean allowsTransfer(int arrival, int departure) {
+        long wait = (long) departure - arrival;
+        return wait >= minTransferTime && wait <= maxTransferTime;
+    }
+}
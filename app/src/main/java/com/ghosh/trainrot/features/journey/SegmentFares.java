@@ -0,0 +1,15 @@
+package com.ghosh.trainrot.features.journey;
+
+// Price of a single ticket between two stop times of the same train, in paise.
+// Fare sources that are not additive along the route (e.g. fixed pairwise
+// tariffs) make split ticketing worthwhile. Timetables only carry a cumulative
+// fare per stop, so the app has no such source yet and split ticketing stays
+// off; tests set one with JourneyPlanner.setSegmentFares.
+interface SegmentFares {
+    // Difference of the timetable's cumulative fares; additive, so never split
+    // and the planner skips split ticketing with it
+    SegmentFares TIMETABLE = (store, boardStop, alightStop) ->
+        store.getFarePaise(alightStop) - store.getFarePaise(boardStop);
+
+    int farePaise(TimetableStore store, int boardStop, int alightStop);
+}
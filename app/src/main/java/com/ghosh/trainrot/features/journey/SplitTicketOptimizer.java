@@ -0,0 +1,79 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Cheapest cover of a ride on one train by consecutive tickets, by dynamic
+// programming over its stops: cost[j] = min over i < j of cost[i] + fare(i, j).
+// Fares from each boarding stop to every later stop are memoized as one row,
+// so a DP over n stops does n row lookups and O(n^2) array reads. Rows are
+// indexed by stop time and published through the array like IdTable's
+// values, so concurrent planners share them without locking.
+class SplitTicketOptimizer {
+    private final TimetableStore store;
+    private final SegmentFares fares;
+    private final AtomicReferenceArray<int[]> faresFrom;
+
+    SplitTicketOptimizer(TimetableStore store, SegmentFares fares) {
+        this.store = store;
+        this.fares = fares;
+        this.faresFrom = new AtomicReferenceArray<>(store.getStopTimeCount());
+    }
+
+    TimetableStore getStore() {
+        return store;
+    }
+
+    int farePaise(int boardStop, int alightStop) {
+        return faresFrom(boardStop)[alightStop - boardStop - 1];
+    }
+
+    // Ticket boundaries as stop times, starting at the board stop and ending at
+    // the alight stop; ties keep fewer tickets
+    int[] cheapestSplit(int boardStop, int alightStop) {
+        int n = alightStop - boardStop;
+        int[] cost = new int[n + 1];
+        int[] previous = new int[n + 1];
+        Arrays.fill(cost, 1, n + 1, Integer.MAX_VALUE);
+        for (int i = 0; i < n; i++) {
+            if (cost[i] == Integer.MAX_VALUE) {
+                continue;
+            }
+            int[] row = faresFrom(boardStop + i);
+            for (int j = i + 1; j <= n; j++) {
+                int candidate = cost[i] + row[j - i - 1];
+                if (candidate < cost[j]) {
+                    cost[j] = candidate;
+                    previous[j] = i;
+                }
+            }
+        }
+
+        int tickets = 0;
+        for (int j = n; j > 0; j = previous[j]) {
+            tickets++;
+        }
+        int[] stops = new int[tickets + 1];
+        int index = tickets;
+        for (int j = n; j > 0; j = previous[j]) {
+            stops[index--] = boardStop + j;
+        }
+        stops[0] = boardStop;
+        return stops;
+    }
+
+    private int[] faresFrom(int boardStop) {
+        int[] row = faresFrom.get(boardStop);
+        if (row == null) {
+            int train = store.getTrain(boardStop);
+            int lastStop = store.getFirstStop(train) + store.getStopCount(train) - 1;
+            row = new int[lastStop - boardStop];
+            for (int j = 0; j < row.length; j++) {
+                row[j] = fares.farePaise(store, boardStop, boardStop + 1 + j);
+            }
+            // Racing fills compute the same row; either may win
+            faresFrom.set(boardStop, row);
+        }
+        return row;
+    }
+}
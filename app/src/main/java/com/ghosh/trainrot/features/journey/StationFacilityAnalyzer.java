@@ -17,22 +17,46 @@ public class StationFacilityAnalyzer {
     private static final double SECURITY_WEIGHT = 0.1;
     
     private final DatabaseReference stationRef;
-    private final Map<String, StationFacilities> stationCache;
+    private final IdTable<StationFacilities> stationCache; // by station ID
+    private final ScoreTable comfortScores = new ScoreTable(0.5); // 0.5 for unknown stations
 
     @Inject
     public StationFacilityAnalyzer(Context context) {
         this.stationRef = FirebaseDatabase.getInstance().getReference("stations");
-        this.stationCache = new HashMap<>();
+        this.stationCache = new IdTable<>();
         loadStationData();
     }
 
     public double getStationComfortScore(String stationCode) {
-        StationFacilities facilities = stationCache.get(stationCode);
-        if (facilities == null) {
-            return 0.5; // Default score for unknown stations
+        return getStationComfortScore(IdDictionary.STATIONS.find(stationCode));
+    }
+
+    public double getStationComfortScore(int stationId) {
+        return comfortScores.get(stationId);
+    }
+
+    // Precomputed scores by station ID, rebuilt whenever facilities change
+    ScoreTable getComfortScores() {
+        return comfortScores;
+    }
+
+    // Runs under the score table's lock so an update cannot land between
+    // reading the station cache and replacing the scores
+    private void rebuildComfortScores() {
+        synchronized (comfortScores) {
+            rebuildComfortScoresLocked();
         }
-        
-        return calculateComfortScore(facilities);
+    }
+
+    private void rebuildComfortScoresLocked() {
+        double[] scores = comfortScores.newTable(stationCache.capacity());
+        for (int stationId = 0; stationId < scores.length; stationId++) {
+            StationFacilities facilities = stationCache.get(stationId);
+            if (facilities != null) {
+                scores[stationId] = calculateComfortScore(facilities);
+            }
+        }
+        comfortScores.replace(scores);
     }
 
     private double calculateComfortScore(StationFacilities facilities) {
@@ -67,9 +91,11 @@ public class StationFacilityAnalyzer {
                 for (com.google.firebase.database.DataSnapshot stationSnapshot : snapshot.getChildren()) {
                     StationFacilities facilities = stationSnapshot.getValue(StationFacilities.class);
                     if (facilities != null) {
-                        stationCache.put(stationSnapshot.getKey(), facilities);
+                        stationCache.put(IdDictionary.STATIONS.intern(stationSnapshot.getKey()),
+                            facilities);
                     }
                 }
+                rebuildComfortScores();
             }
 
             @Override
@@ -81,7 +107,11 @@ public class StationFacilityAnalyzer {
 
     public void updateStationFacilities(String stationCode, StationFacilities facilities) {
         // Update local cache
-        stationCache.put(stationCode, facilities);
+        int stationId = IdDictionary.STATIONS.intern(stationCode);
+        synchronized (comfortScores) {
+            stationCache.put(stationId, facilities);
+            comfortScores.set(stationId, calculateComfortScore(facilities));
+        }
         
         // Update database
         stationRef.child(stationCode).setValue(facilities);
@@ -0,0 +1,374 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.*;
+
+// Autocomplete over the station codes and names and the train numbers and
+// names of one timetable. Every entry is indexed under its code, its full
+// name and each later word of the name ("delhi" finds New Delhi), as
+// normalized keys in one sorted array, so a prefix is a binary-searched
+// range. When exact prefixes run short, keys one edit away from the query
+// are tried as well. Matches rank by how well they match, then popularity.
+// Answers for the first keystrokes, whose ranges are the longest, are
+// computed at build time.
+public final class SuggestionIndex {
+    public enum Kind { STATION, TRAIN }
+
+    private static final int FUZZY_MIN_LENGTH = 4; // shorter queries have too many neighbours
+    private static final int PRECOMPUTED_LENGTH = 2;
+    private static final int PRECOMPUTED_MIN_RANGE = 256;
+    private static final int PRECOMPUTED_LIMIT = 10;
+    // Match tiers, best first
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1; // start of a code or whole name
+    private static final int WORD = 2;   // start of a later word of a name
+    private static final int FUZZY = 3;
+
+    public static final SuggestionIndex EMPTY = new SuggestionIndex(new String[0], new String[0],
+        new int[0], 0, new String[0], new int[0], new boolean[0], new char[0]);
+
+    private final String[] codes;   // by entry: stations first, then trains
+    private final String[] names;
+    private final int[] popularity; // scheduled departures of a station, stops of a train
+    private final int stationCount;
+    private final String[] keys;    // normalized, sorted
+    private final int[] keyEntries;
+    private final boolean[] wordKeys; // key starts at a later word
+    private final char[] alphabet;  // characters occurring in keys, for edits
+    // Ranked entries for short prefixes with long ranges, by kind ordinal
+    // and then null kind
+    private final List<Map<String, int[]>> precomputed = new ArrayList<>();
+
+    private SuggestionIndex(String[] codes, String[] names, int[] popularity, int stationCount,
+                            String[] keys, int[] keyEntries, boolean[] wordKeys,
+                            char[] alphabet) {
+        this.codes = codes;
+        this.names = names;
+        this.popularity = popularity;
+        this.stationCount = stationCount;
+        this.keys = keys;
+        this.keyEntries = keyEntries;
+        this.wordKeys = wordKeys;
+        this.alphabet = alphabet;
+        for (int kind = 0; kind <= Kind.values().length; kind++) {
+            precomputed.add(new HashMap<>());
+        }
+        precompute();
+    }
+
+    public static SuggestionIndex build(TimetableStore store) {
+        int stations = store.getStationCount();
+        int trains = store.getTrainCount();
+        String[] codes = new String[stations + trains];
+        String[] names = new String[stations + trains];
+        int[] popularity = new int[stations + trains];
+        for (int station = 0; station < stations; station++) {
+            codes[station] = store.getStationCode(station);
+            names[station] = store.getStationName(station);
+            popularity[station] = store.getDepartureCount(station);
+        }
+        for (int train = 0; train < trains; train++) {
+            codes[stations + train] = store.getTrainNumber(train);
+            names[stations + train] = store.getTrainName(train);
+            popularity[stations + train] = store.getStopCount(train);
+        }
+
+        List<Key> keyList = new ArrayList<>((stations + trains) * 3);
+        for (int entry = 0; entry < codes.length; entry++) {
+            addKeys(keyList, codes[entry], entry);
+            addKeys(keyList, names[entry], entry);
+        }
+        keyList.sort(Comparator.comparing((Key k) -> k.text).thenComparingInt(k -> k.entry));
+
+        String[] keys = new String[keyList.size()];
+        int[] keyEntries = new int[keyList.size()];
+        boolean[] wordKeys = new boolean[keyList.size()];
+        BitSet characters = new BitSet();
+        for (int i = 0; i < keys.length; i++) {
+            Key key = keyList.get(i);
+            // Equal texts of different entries share one String
+            keys[i] = i > 0 && key.text.equals(keys[i - 1]) ? keys[i - 1] : key.text;
+            keyEntries[i] = key.entry;
+            wordKeys[i] = key.word;
+            for (int c = 0; c < key.text.length(); c++) {
+                characters.set(key.text.charAt(c));
+            }
+        }
+        char[] alphabet = new char[characters.cardinality()];
+        for (int c = characters.nextSetBit(0), i = 0; c >= 0; c = characters.nextSetBit(c + 1)) {
+            alphabet[i++] = (char) c;
+        }
+        return new SuggestionIndex(codes, names, popularity, stations, keys, keyEntries,
+            wordKeys, alphabet);
+    }
+
+    // The whole text and every suffix starting at a later word
+    private static void addKeys(List<Key> keys, String text, int entry) {
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        keys.add(new Key(normalized, entry, false));
+        for (int i = normalized.indexOf(' '); i >= 0; i = normalized.indexOf(' ', i + 1)) {
+            keys.add(new Key(normalized.substring(i + 1), entry, true));
+        }
+    }
+
+    // Lower-case letters and digits, other runs of characters as one space
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                if (space && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                normalized.append(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    public List<Suggestion> suggest(String query, int limit) {
+        return suggest(query, limit, null);
+    }
+
+    // Best matches of the given kind, or of both when kind is null
+    public List<Suggestion> suggest(String query, int limit, Kind kind) {
+        String prefix = normalize(query);
+        if (prefix.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        int[] entries = limit <= PRECOMPUTED_LIMIT
+            ? precomputed.get(kind == null ? Kind.values().length : kind.ordinal()).get(prefix)
+            : null;
+        if (entries == null) {
+            entries = match(prefix, limit, kind);
+        }
+
+        int count = Math.min(limit, entries.length);
+        List<Suggestion> suggestions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int entry = entries[i];
+            suggestions.add(new Suggestion(entry < stationCount ? Kind.STATION : Kind.TRAIN,
+                codes[entry], names[entry], popularity[entry]));
+        }
+        return suggestions;
+    }
+
+    private int[] match(String prefix, int limit, Kind kind) {
+        TopMatches top = new TopMatches(limit);
+        collect(prefix, prefix, PREFIX, kind, top);
+        if (top.size < limit && prefix.length() >= FUZZY_MIN_LENGTH) {
+            collectEdits(prefix, kind, top);
+        }
+        return Arrays.copyOf(top.entries, top.size);
+    }
+
+    // Every prefix of up to PRECOMPUTED_LENGTH characters whose range is
+    // long enough to be slow to rank
+    private void precompute() {
+        for (int length = 1; length <= PRECOMPUTED_LENGTH; length++) {
+            int i = 0;
+            while (i < keys.length) {
+                if (keys[i].length() < length) {
+                    i++;
+                    continue;
+                }
+                // Keys sharing this prefix start here, as shorter ones sort first
+                String prefix = keys[i].substring(0, length);
+                int end = lowerBound(prefix + Character.MAX_VALUE);
+                if (end - i >= PRECOMPUTED_MIN_RANGE) {
+                    precomputed.get(Kind.values().length).put(prefix,
+                        match(prefix, PRECOMPUTED_LIMIT, null));
+                    for (Kind kind : Kind.values()) {
+                        precomputed.get(kind.ordinal()).put(prefix,
+                            match(prefix, PRECOMPUTED_LIMIT, kind));
+                    }
+                }
+                i = end;
+            }
+        }
+    }
+
+    // Offers every entry with a key starting with prefix; keys equal to the
+    // query itself rank as exact matches
+    private void collect(String prefix, String query, int tier, Kind kind, TopMatches top) {
+        int end = lowerBound(prefix + Character.MAX_VALUE);
+        for (int i = lowerBound(prefix); i < end; i++) {
+            int entry = keyEntries[i];
+            if (kind != null && (entry < stationCount) != (kind == Kind.STATION)) {
+                continue;
+            }
+            int matchTier = tier;
+            if (tier == PREFIX) {
+                matchTier = keys[i].equals(query) ? EXACT : wordKeys[i] ? WORD : PREFIX;
+            }
+            top.offer(entry, matchTier, popularity[entry], names[entry]);
+        }
+    }
+
+    // Prefixes one deletion, transposition, substitution or inner insertion
+    // away; an insertion at the end is already a prefix match. An edit keeps
+    // the characters before it, so edits past the longest prefix of the
+    // query that any key starts with cannot match.
+    private void collectEdits(String query, Kind kind, TopMatches top) {
+        int matched = 0;
+        while (matched < query.length() && hasPrefix(query.substring(0, matched + 1))) {
+            matched++;
+        }
+        int length = Math.min(query.length(), matched + 1);
+        char[] chars = query.toCharArray();
+        for (int i = 0; i < length; i++) {
+            collect(query.substring(0, i) + query.substring(i + 1), query, FUZZY, kind, top);
+        }
+        for (int i = 0; i < length && i + 1 < chars.length; i++) {
+            if (chars[i] != chars[i + 1]) {
+                char[] swapped = chars.clone();
+                swapped[i] = chars[i + 1];
+                swapped[i + 1] = chars[i];
+                collect(new String(swapped), query, FUZZY, kind, top);
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            char[] edited = chars.clone();
+            for (char c : alphabet) {
+                if (c != chars[i]) {
+                    edited[i] = c;
+                    collect(new String(edited), query, FUZZY, kind, top);
+                }
+            }
+        }
+        for (int i = 1; i < length; i++) {
+            String head = query.substring(0, i);
+            String tail = query.substring(i);
+            for (char c : alphabet) {
+                collect(head + c + tail, query, FUZZY, kind, top);
+            }
+        }
+    }
+
+    private boolean hasPrefix(String prefix) {
+        int i = lowerBound(prefix);
+        return i < keys.length && keys[i].startsWith(prefix);
+    }
+
+    // First key not less than the text
+    private int lowerBound(String text) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(text) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class Key {
+        final String text;
+        final int entry;
+        final boolean word;
+
+        Key(String text, int entry, boolean word) {
+            this.text = text;
+            this.entry = entry;
+            this.word = word;
+        }
+    }
+
+    // The best few distinct entries, kept sorted: better tier, then more
+    // popular, then shorter name
+    private static final class TopMatches {
+        final int[] entries;
+        final int[] tiers;
+        final int[] scores;
+        final int[] nameLengths;
+        int size;
+
+        TopMatches(int limit) {
+            entries = new int[limit];
+            tiers = new int[limit];
+            scores = new int[limit];
+            nameLengths = new int[limit];
+        }
+
+        void offer(int entry, int tier, int score, String name) {
+            int nameLength = name == null ? 0 : name.length();
+            for (int i = 0; i < size; i++) {
+                if (entries[i] == entry) {
+                    if (tier >= tiers[i]) {
+                        return;
+                    }
+                    // Found again through a better key: re-rank it
+                    System.arraycopy(entries, i + 1, entries, i, size - i - 1);
+                    System.arraycopy(tiers, i + 1, tiers, i, size - i - 1);
+                    System.arraycopy(scores, i + 1, scores, i, size - i - 1);
+                    System.arraycopy(nameLengths, i + 1, nameLengths, i, size - i - 1);
+                    size--;
+                    break;
+                }
+            }
+            int position = size;
+            while (position > 0 && better(tier, score, nameLength, position - 1)) {
+                position--;
+            }
+            if (position == entries.length) {
+                return;
+            }
+            int moved = Math.min(size, entries.length - 1) - position;
+            System.arraycopy(entries, position, entries, position + 1, moved);
+            System.arraycopy(tiers, position, tiers, position + 1, moved);
+            System.arraycopy(scores, position, scores, position + 1, moved);
+            System.arraycopy(nameLengths, position, nameLengths, position + 1, moved);
+            entries[position] = entry;
+            tiers[position] = tier;
+            scores[position] = score;
+            nameLengths[position] = nameLength;
+            size = Math.min(size + 1, entries.length);
+        }
+
+        private boolean better(int tier, int score, int nameLength, int i) {
+            if (tier != tiers[i]) {
+                return tier < tiers[i];
+            }
+            if (score != scores[i]) {
+                return score > scores[i];
+            }
+            return nameLength < nameLengths[i];
+        }
+    }
+
+    public static class Suggestion {
+        private final Kind kind;
+        private final String code;
+        private final String name;
+        private final int popularity;
+
+        Suggestion(Kind kind, String code, String name, int popularity) {
+            this.kind = kind;
+            this.code = code;
+            this.name = name;
+            this.popularity = popularity;
+        }
+
+        public Kind getKind() { return kind; }
+        // Station code or train number
+        public String getCode() { return code; }
+        public String getName() { return name; }
+        public int getPopularity() { return popularity; }
+    }
+}
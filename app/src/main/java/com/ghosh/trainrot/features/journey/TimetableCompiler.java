@@ -0,0 +1,436 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Compiles builder input into the TimetableFile layout, including the
+// connection and route indexes, so nothing is derived at load time.
+final class TimetableCompiler {
+    static final int LANDMARK_COUNT = 16;
+
+    private final List<byte[]> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+
+    private int[] trainStopStart;
+    private int[] stopTrain;
+    private int[] stopStation;
+    private int[] stopArrival;
+    private int[] stopDeparture;
+    private int[] stopFare;
+
+    private TimetableCompiler() {
+    }
+
+    static ByteBuffer compile(TimetableStore.Builder builder) {
+        return new TimetableCompiler().run(builder);
+    }
+
+    private ByteBuffer run(TimetableStore.Builder builder) {
+        int stations = builder.stationCodes.size();
+        int trains = builder.trainNumbers.size();
+        int stops = builder.stopTrain.size();
+        Object[] sections = new Object[TimetableFile.SECTION_COUNT];
+
+        // Stable counting sort by train keeps each train's stops in order
+        trainStopStart = new int[trains + 1];
+        for (int i = 0; i < stops; i++) {
+            trainStopStart[builder.stopTrain.get(i) + 1]++;
+        }
+        for (int t = 0; t < trains; t++) {
+            trainStopStart[t + 1] += trainStopStart[t];
+        }
+        int[] order = new int[stops];
+        int[] fill = Arrays.copyOf(trainStopStart, trains);
+        for (int i = 0; i < stops; i++) {
+            order[fill[builder.stopTrain.get(i)]++] = i;
+        }
+
+        stopTrain = permute(builder.stopTrain, order);
+        stopStation = permute(builder.stopStation, order);
+        stopArrival = permute(builder.stopArrival, order);
+        stopDeparture = permute(builder.stopDeparture, order);
+        sections[TimetableFile.STOP_TRAIN] = stopTrain;
+        sections[TimetableFile.STOP_SEQUENCE] = permute(builder.stopSequence, order);
+        sections[TimetableFile.STOP_STATION] = stopStation;
+        sections[TimetableFile.STOP_ARRIVAL] = stopArrival;
+        sections[TimetableFile.STOP_DEPARTURE] = stopDeparture;
+        sections[TimetableFile.STOP_PLATFORM] = permute(builder.stopPlatform, order);
+        stopFare = permute(builder.stopFare, order);
+        sections[TimetableFile.STOP_FARE] = stopFare;
+        sections[TimetableFile.TRAIN_STOP_START] = trainStopStart;
+
+        sections[TimetableFile.STATION_CODE] = intern(builder.stationCodes);
+        sections[TimetableFile.STATION_NAME] = intern(builder.stationNames);
+        sections[TimetableFile.STATION_BY_CODE] = sortByCode((int[]) sections[TimetableFile.STATION_CODE]);
+        sections[TimetableFile.TRAIN_NUMBER] = intern(builder.trainNumbers);
+        sections[TimetableFile.TRAIN_NAME] = intern(builder.trainNames);
+        sections[TimetableFile.TRAIN_CLASS] = intern(builder.trainClasses);
+        sections[TimetableFile.PLATFORM_NAME] = intern(builder.platforms);
+
+        compileStationDepartures(stations, sections);
+        compileConnections(sections);
+        compileRoutes(stations, trains, sections);
+        compileLandmarks(stations, sections);
+        compileStrings(sections);
+        return TimetableFile.encode(sections);
+    }
+
+    private void compileStationDepartures(int stations, Object[] sections) {
+        long[] departures = departureSortedStops();
+        int[] start = new int[stations + 1];
+        for (long key : departures) {
+            start[stopStation[(int) key] + 1]++;
+        }
+        for (int s = 0; s < stations; s++) {
+            start[s + 1] += start[s];
+        }
+        int[] stationDepartures = new int[departures.length];
+        int[] fill = Arrays.copyOf(start, stations);
+        for (long key : departures) {
+            int stop = (int) key;
+            stationDepartures[fill[stopStation[stop]]++] = stop;
+        }
+        sections[TimetableFile.STATION_DEPARTURE_START] = start;
+        sections[TimetableFile.STATION_DEPARTURES] = stationDepartures;
+    }
+
+    private void compileConnections(Object[] sections) {
+        long[] departures = departureSortedStops();
+        int size = departures.length;
+        int[] stop = new int[size];
+        int[] departureStation = new int[size];
+        int[] arrivalStation = new int[size];
+        int[] departureTime = new int[size];
+        int[] arrivalTime = new int[size];
+        int[] trip = new int[size];
+        for (int i = 0; i < size; i++) {
+            int s = (int) departures[i];
+            stop[i] = s;
+            departureStation[i] = stopStation[s];
+            arrivalStation[i] = stopStation[s + 1];
+            departureTime[i] = stopDeparture[s];
+            arrivalTime[i] = stopArrival[s + 1];
+            trip[i] = stopTrain[s];
+        }
+        sections[TimetableFile.CONNECTION_STOP] = stop;
+        sections[TimetableFile.CONNECTION_DEPARTURE_STATION] = departureStation;
+        sections[TimetableFile.CONNECTION_ARRIVAL_STATION] = arrivalStation;
+        sections[TimetableFile.CONNECTION_DEPARTURE_TIME] = departureTime;
+        sections[TimetableFile.CONNECTION_ARRIVAL_TIME] = arrivalTime;
+        sections[TimetableFile.CONNECTION_TRIP] = trip;
+    }
+
+    // Trains with the same stop sequence and fares share a route unless one
+    // overtakes another, which would break binary search for the earliest
+    // trip. Boarding takes only a route's earliest catchable trip, so a later
+    // but cheaper train must sit on a route of its own to reach the bags.
+    private void compileRoutes(int stations, int trains, Object[] sections) {
+        Integer[] byDeparture = new Integer[trains];
+        for (int t = 0; t < trains; t++) {
+            byDeparture[t] = t;
+        }
+        Arrays.sort(byDeparture, Comparator.comparingInt(t ->
+            trainStopStart[t] < trainStopStart[t + 1] ? stopDeparture[trainStopStart[t]] : 0));
+
+        Map<String, List<Integer>> routesByStops = new HashMap<>();
+        List<List<Integer>> routeTripLists = new ArrayList<>();
+        for (int t : byDeparture) {
+            if (trainStopStart[t + 1] - trainStopStart[t] < 2) {
+                continue;
+            }
+            String key = Arrays.toString(Arrays.copyOfRange(stopStation,
+                trainStopStart[t], trainStopStart[t + 1])) + fareProfile(t);
+            List<Integer> candidates = routesByStops.computeIfAbsent(key, k -> new ArrayList<>());
+            List<Integer> route = null;
+            for (int r : candidates) {
+                List<Integer> routeTrips = routeTripLists.get(r);
+                if (!overtakes(routeTrips.get(routeTrips.size() - 1), t)) {
+                    route = routeTrips;
+                    break;
+                }
+            }
+            if (route == null) {
+                route = new ArrayList<>();
+                candidates.add(routeTripLists.size());
+                routeTripLists.add(route);
+            }
+            route.add(t);
+        }
+
+        int routeCount = routeTripLists.size();
+        int[] routeStopStart = new int[routeCount + 1];
+        int[] routeTripStart = new int[routeCount + 1];
+        for (int r = 0; r < routeCount; r++) {
+            int first = routeTripLists.get(r).get(0);
+            routeStopStart[r + 1] = routeStopStart[r] + trainStopStart[first + 1] - trainStopStart[first];
+            routeTripStart[r + 1] = routeTripStart[r] + routeTripLists.get(r).size();
+        }
+        int[] routeStops = new int[routeStopStart[routeCount]];
+        int[] routeTrips = new int[routeTripStart[routeCount]];
+        for (int r = 0; r < routeCount; r++) {
+            List<Integer> routeTripList = routeTripLists.get(r);
+            int first = routeTripList.get(0);
+            System.arraycopy(stopStation, trainStopStart[first], routeStops, routeStopStart[r],
+                routeStopStart[r + 1] - routeStopStart[r]);
+            for (int i = 0; i < routeTripList.size(); i++) {
+                routeTrips[routeTripStart[r] + i] = routeTripList.get(i);
+            }
+        }
+
+        int[] stationRouteStart = new int[stations + 1];
+        for (int station : routeStops) {
+            stationRouteStart[station + 1]++;
+        }
+        for (int s = 0; s < stations; s++) {
+            stationRouteStart[s + 1] += stationRouteStart[s];
+        }
+        int[] stationRoutes = new int[routeStops.length];
+        int[] stationRoutePositions = new int[routeStops.length];
+        int[] fill = Arrays.copyOf(stationRouteStart, stations);
+        for (int r = 0; r < routeCount; r++) {
+            for (int p = routeStopStart[r]; p < routeStopStart[r + 1]; p++) {
+                int slot = fill[routeStops[p]]++;
+                stationRoutes[slot] = r;
+                stationRoutePositions[slot] = p - routeStopStart[r];
+            }
+        }
+
+        sections[TimetableFile.ROUTE_STOP_START] = routeStopStart;
+        sections[TimetableFile.ROUTE_STOPS] = routeStops;
+        sections[TimetableFile.ROUTE_TRIP_START] = routeTripStart;
+        sections[TimetableFile.ROUTE_TRIPS] = routeTrips;
+        sections[TimetableFile.STATION_ROUTE_START] = stationRouteStart;
+        sections[TimetableFile.STATION_ROUTES] = stationRoutes;
+        sections[TimetableFile.STATION_ROUTE_POSITIONS] = stationRoutePositions;
+    }
+
+    // Shortest ride times and fares between landmark stations and every
+    // station, over the graph of consecutive stops weighted by the quickest and
+    // the cheapest train on each hop. Waits are ignored, so by the triangle
+    // inequality these give admissible lower bounds between any two stations.
+    // Stored station-major (one entry per landmark), NO_PATH where there is no
+    // path; fare distances are left empty if any train's fare ever decreases.
+    private void compileLandmarks(int stations, Object[] sections) {
+        Map<Long, int[]> hops = new HashMap<>();
+        boolean faresIncrease = true;
+        for (int i = 0; i + 1 < stopTrain.length; i++) {
+            if (stopTrain[i + 1] != stopTrain[i]) {
+                continue;
+            }
+            int ride = Math.max(0, stopArrival[i + 1] - stopDeparture[i]);
+            int fare = stopFare[i + 1] - stopFare[i];
+            faresIncrease &= fare >= 0;
+            int[] hop = hops.computeIfAbsent(((long) stopStation[i] << 32) | stopStation[i + 1],
+                k -> new int[] {Integer.MAX_VALUE, Integer.MAX_VALUE});
+            hop[0] = Math.min(hop[0], ride);
+            hop[1] = Math.min(hop[1], fare);
+        }
+        int[][] forward = adjacency(stations, hops, false);
+        int[][] backward = adjacency(stations, hops, true);
+
+        int count = Math.min(LANDMARK_COUNT, stations);
+        int[] landmarks = new int[count];
+        int[] rideFrom = new int[stations * count];
+        int[] rideTo = new int[stations * count];
+        int[] fareFrom = new int[faresIncrease ? stations * count : 0];
+        int[] fareTo = new int[fareFrom.length];
+        // Farthest-first: each landmark is the station farthest in ride time
+        // from all previous ones, starting from the one farthest from station 0
+        int[] nearest = new int[stations];
+        Arrays.fill(nearest, Integer.MAX_VALUE);
+        int next = stations == 0 ? 0 : farthest(shortestPaths(forward, 0, 0), nearest);
+        for (int l = 0; l < count; l++) {
+            landmarks[l] = next;
+            int[] from = shortestPaths(forward, next, 0);
+            int[] to = shortestPaths(backward, next, 0);
+            for (int station = 0; station < stations; station++) {
+                rideFrom[station * count + l] = from[station];
+                rideTo[station * count + l] = to[station];
+                if (from[station] != TimetableStore.NO_PATH) {
+                    nearest[station] = Math.min(nearest[station], from[station]);
+                }
+                if (to[station] != TimetableStore.NO_PATH) {
+                    nearest[station] = Math.min(nearest[station], to[station]);
+                }
+            }
+            if (faresIncrease) {
+                int[] cheapestFrom = shortestPaths(forward, next, 1);
+                int[] cheapestTo = shortestPaths(backward, next, 1);
+                for (int station = 0; station < stations; station++) {
+                    fareFrom[station * count + l] = cheapestFrom[station];
+                    fareTo[station * count + l] = cheapestTo[station];
+                }
+            }
+            next = farthest(from, nearest);
+        }
+
+        sections[TimetableFile.LANDMARKS] = landmarks;
+        sections[TimetableFile.LANDMARK_RIDE_FROM] = rideFrom;
+        sections[TimetableFile.LANDMARK_RIDE_TO] = rideTo;
+        sections[TimetableFile.LANDMARK_FARE_FROM] = fareFrom;
+        sections[TimetableFile.LANDMARK_FARE_TO] = fareTo;
+    }
+
+    // Station with the largest distance to its nearest landmark; stations no
+    // landmark connects to fall back to their distance from the last one
+    private static int farthest(int[] reached, int[] nearest) {
+        int best = 0;
+        long bestDistance = -1;
+        for (int station = 0; station < nearest.length; station++) {
+            long distance = nearest[station] == Integer.MAX_VALUE
+                ? reached[station] : nearest[station];
+            if (distance > bestDistance) {
+                bestDistance = distance;
+                best = station;
+            }
+        }
+        return best;
+    }
+
+    // Per station, (neighbour, ride time, fare) triples flattened into one array
+    private static int[][] adjacency(int stations, Map<Long, int[]> hops, boolean reverse) {
+        int[] degree = new int[stations];
+        for (long hop : hops.keySet()) {
+            degree[(int) (reverse ? hop : hop >>> 32)]++;
+        }
+        int[][] adjacency = new int[stations][];
+        for (int station = 0; station < stations; station++) {
+            adjacency[station] = new int[degree[station] * 3];
+        }
+        int[] fill = new int[stations];
+        for (Map.Entry<Long, int[]> entry : hops.entrySet()) {
+            long hop = entry.getKey();
+            int tail = (int) (reverse ? hop : hop >>> 32);
+            int head = (int) (reverse ? hop >>> 32 : hop);
+            adjacency[tail][fill[tail]++] = head;
+            adjacency[tail][fill[tail]++] = entry.getValue()[0];
+            adjacency[tail][fill[tail]++] = entry.getValue()[1];
+        }
+        return adjacency;
+    }
+
+    // Dijkstra over one weight (0 ride time, 1 fare) with a
+    // (distance << 32 | station) heap
+    private static int[] shortestPaths(int[][] adjacency, int source, int weight) {
+        int[] distance = new int[adjacency.length];
+        Arrays.fill(distance, TimetableStore.NO_PATH);
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        queue.add((long) source);
+        while (!queue.isEmpty()) {
+            long entry = queue.poll();
+            int station = (int) entry;
+            if (distance[station] != TimetableStore.NO_PATH) {
+                continue;
+            }
+            int d = (int) (entry >>> 32);
+            distance[station] = d;
+            int[] edges = adjacency[station];
+            for (int e = 0; e < edges.length; e += 3) {
+                if (distance[edges[e]] == TimetableStore.NO_PATH) {
+                    queue.add(((long) (d + edges[e + 1 + weight]) << 32) | edges[e]);
+                }
+            }
+        }
+        return distance;
+    }
+
+    // Fares from the train's first stop to each of its stops
+    private String fareProfile(int train) {
+        int first = trainStopStart[train];
+        int[] fares = new int[trainStopStart[train + 1] - first];
+        for (int i = 0; i < fares.length; i++) {
+            fares[i] = stopFare[first + i] - stopFare[first];
+        }
+        return Arrays.toString(fares);
+    }
+
+    private boolean overtakes(int earlier, int later) {
+        int earlierStart = trainStopStart[earlier];
+        int laterStart = trainStopStart[later];
+        for (int p = 0; p < trainStopStart[earlier + 1] - earlierStart; p++) {
+            if (stopDeparture[laterStart + p] < stopDeparture[earlierStart + p]
+                    || stopArrival[laterStart + p] < stopArrival[earlierStart + p]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Stops that have a next stop, keyed (departure << 32 | stop) and sorted
+    private long[] departureSortedStops() {
+        long[] keys = new long[stopTrain.length];
+        int size = 0;
+        for (int i = 0; i + 1 < stopTrain.length; i++) {
+            if (stopTrain[i + 1] == stopTrain[i]) {
+                keys[size++] = ((long) stopDeparture[i] << 32) | i;
+            }
+        }
+        keys = Arrays.copyOf(keys, size);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    private int[] sortByCode(int[] codeIds) {
+        Integer[] order = new Integer[codeIds.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compareBytes(strings.get(codeIds[a]), strings.get(codeIds[b])));
+        int[] sorted = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = order[i];
+        }
+        return sorted;
+    }
+
+    private int[] intern(List<String> values) {
+        int[] ids = new int[values.size()];
+        for (int i = 0; i < ids.length; i++) {
+            String value = values.get(i);
+            if (value == null) {
+                ids[i] = TimetableStore.NO_STRING;
+                continue;
+            }
+            Integer id = stringIds.get(value);
+            if (id == null) {
+                id = strings.size();
+                stringIds.put(value, id);
+                strings.add(value.getBytes(StandardCharsets.UTF_8));
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    private void compileStrings(Object[] sections) {
+        int[] offsets = new int[strings.size() + 1];
+        for (int i = 0; i < strings.size(); i++) {
+            offsets[i + 1] = offsets[i] + strings.get(i).length;
+        }
+        byte[] bytes = new byte[offsets[strings.size()]];
+        for (int i = 0; i < strings.size(); i++) {
+            System.arraycopy(strings.get(i), 0, bytes, offsets[i], strings.get(i).length);
+        }
+        sections[TimetableFile.STRING_OFFSETS] = offsets;
+        sections[TimetableFile.STRING_BYTES] = bytes;
+    }
+
+    private static int[] permute(TimetableStore.IntList values, int[] order) {
+        int[] permuted = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            permuted[i] = values.get(order[i]);
+        }
+        return permuted;
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length && i < b.length; i++) {
+            int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+}
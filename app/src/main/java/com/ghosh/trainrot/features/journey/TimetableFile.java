@@ -0,0 +1,171 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+// Versioned binary timetable: a header with a section table followed by
+// 4-byte aligned int columns and a UTF-8 string table. Everything is read in
+// place, so a mapped file is queryable as soon as the header is validated.
+public final class TimetableFile {
+    static final int MAGIC = 0x54525454; // "TRTT"
+    static final int VERSION = 3; // 3: routes split by fare profile
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int STRING_OFFSETS = 0;
+    static final int STRING_BYTES = 1;
+    static final int STATION_CODE = 2;
+    static final int STATION_NAME = 3;
+    static final int STATION_BY_CODE = 4;
+    static final int TRAIN_NUMBER = 5;
+    static final int TRAIN_NAME = 6;
+    static final int TRAIN_CLASS = 7;
+    static final int TRAIN_STOP_START = 8;
+    static final int PLATFORM_NAME = 9;
+    static final int STOP_TRAIN = 10;
+    static final int STOP_SEQUENCE = 11;
+    static final int STOP_STATION = 12;
+    static final int STOP_ARRIVAL = 13;
+    static final int STOP_DEPARTURE = 14;
+    static final int STOP_PLATFORM = 15;
+    static final int STOP_FARE = 16;
+    static final int STATION_DEPARTURE_START = 17;
+    static final int STATION_DEPARTURES = 18;
+    static final int CONNECTION_STOP = 19;
+    static final int CONNECTION_DEPARTURE_STATION = 20;
+    static final int CONNECTION_ARRIVAL_STATION = 21;
+    static final int CONNECTION_DEPARTURE_TIME = 22;
+    static final int CONNECTION_ARRIVAL_TIME = 23;
+    static final int CONNECTION_TRIP = 24;
+    static final int ROUTE_STOP_START = 25;
+    static final int ROUTE_STOPS = 26;
+    static final int ROUTE_TRIP_START = 27;
+    static final int ROUTE_TRIPS = 28;
+    static final int STATION_ROUTE_START = 29;
+    static final int STATION_ROUTES = 30;
+    static final int STATION_ROUTE_POSITIONS = 31;
+    static final int LANDMARKS = 32;
+    static final int LANDMARK_RIDE_FROM = 33;
+    static final int LANDMARK_RIDE_TO = 34;
+    static final int LANDMARK_FARE_FROM = 35;
+    static final int LANDMARK_FARE_TO = 36;
+    static final int SECTION_COUNT = 37;
+
+    // magic, version, section count, reserved, then (offset, length) per section
+    private static final int HEADER_BYTES = 16 + 8 * SECTION_COUNT;
+
+    private TimetableFile() {
+    }
+
+    public static TimetableStore map(File file) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            FileChannel fileChannel = inputStream.getChannel();
+            return map(fileChannel, 0, fileChannel.size());
+        }
+    }
+
+    // A timetable stored at [offset, offset + length) of a larger file, such
+    // as an uncompressed asset inside the APK. The mapping outlives the channel.
+    public static TimetableStore map(FileChannel fileChannel, long offset, long length)
+            throws IOException {
+        return new TimetableStore(fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    public static void write(TimetableStore store, File file) throws IOException {
+        ByteBuffer buffer = store.getBuffer();
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            FileChannel fileChannel = outputStream.getChannel();
+            while (buffer.hasRemaining()) {
+                fileChannel.write(buffer);
+            }
+        }
+    }
+
+    // Sections are int[] columns except STRING_BYTES, which is a byte[]
+    static ByteBuffer encode(Object[] sections) {
+        long size = HEADER_BYTES;
+        for (Object section : sections) {
+            size += align(byteLength(section));
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Timetable too large: " + size + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ORDER);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(SECTION_COUNT).putInt(0);
+        int offset = HEADER_BYTES;
+        for (Object section : sections) {
+            int length = byteLength(section);
+            buffer.putInt(offset).putInt(length);
+            offset += align(length);
+        }
+
+        for (Object section : sections) {
+            int start = buffer.position();
+            if (section instanceof byte[]) {
+                buffer.put((byte[]) section);
+            } else {
+                buffer.asIntBuffer().put((int[]) section);
+                buffer.position(start + byteLength(section));
+            }
+            buffer.position(start + align(byteLength(section)));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static void validate(ByteBuffer buffer) {
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a timetable file");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported timetable version " + version);
+        }
+        if (buffer.getInt(8) != SECTION_COUNT) {
+            throw new IllegalArgumentException("Unexpected timetable section count");
+        }
+        for (int id = 0; id < SECTION_COUNT; id++) {
+            int offset = sectionOffset(buffer, id);
+            int length = sectionLength(buffer, id);
+            if (offset < HEADER_BYTES || length < 0) {
+                throw new IllegalArgumentException("Invalid timetable section " + id);
+            }
+            if ((long) offset + length > buffer.limit()) {
+                throw new IllegalArgumentException("Truncated timetable section " + id);
+            }
+        }
+    }
+
+    static ByteBuffer bytes(ByteBuffer buffer, int id) {
+        ByteBuffer section = buffer.duplicate();
+        section.position(sectionOffset(buffer, id));
+        section.limit(sectionOffset(buffer, id) + sectionLength(buffer, id));
+        return section.slice().order(ORDER);
+    }
+
+    static IntBuffer ints(ByteBuffer buffer, int id) {
+        return bytes(buffer, id).asIntBuffer();
+    }
+
+    private static int sectionOffset(ByteBuffer buffer, int id) {
+        return buffer.getInt(16 + 8 * id);
+    }
+
+    private static int sectionLength(ByteBuffer buffer, int id) {
+        return buffer.getInt(20 + 8 * id);
+    }
+
+    private static int byteLength(Object section) {
+        return section instanceof byte[] ? ((byte[]) section).length : ((int[]) section).length * 4;
+    }
+
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+}
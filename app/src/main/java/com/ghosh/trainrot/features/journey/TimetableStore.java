@@ -0,0 +1,397 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Int-indexed timetable read in place from a TimetableFile buffer, either
+// built on the heap or memory-mapped. Stop times are parallel columns grouped
+// by train in stop order, so the stop after stop time i of a train is i + 1.
+public class TimetableStore {
+    public static final int NO_PLATFORM = -1;
+    public static final int NO_PATH = -1;
+    static final int NO_STRING = -1;
+
+    private final ByteBuffer buffer;
+    private final IntBuffer stringOffsets;
+    private final ByteBuffer stringBytes;
+    private final String[] decodedStrings;
+
+    private final IntBuffer stationCode;
+    private final IntBuffer stationName;
+    private final IntBuffer stationByCode;
+
+    private final IntBuffer trainNumber;
+    private final IntBuffer trainName;
+    private final IntBuffer trainClass;
+    private final IntBuffer trainStopStart;
+
+    private final IntBuffer platformName;
+
+    private final IntBuffer stopTrain;
+    private final IntBuffer stopSequence;
+    private final IntBuffer stopStation;
+    private final IntBuffer stopArrival;
+    private final IntBuffer stopDeparture;
+    private final IntBuffer stopPlatform;
+    private final IntBuffer stopFare; // paise from the train's origin
+
+    // Stop times departing each station, sorted by departure time
+    private final IntBuffer stationDepartureStart;
+    private final IntBuffer stationDepartures;
+
+    // Departure-sorted elementary connections, scanned by ConnectionScanner
+    final IntBuffer connectionStop;
+    final IntBuffer connectionDepartureStation;
+    final IntBuffer connectionArrivalStation;
+    final IntBuffer connectionDepartureTime;
+    final IntBuffer connectionArrivalTime;
+    final IntBuffer connectionTrip;
+
+    // Trains sharing a stop sequence, ordered by departure; scanned by RaptorPlanner
+    final IntBuffer routeStopStart;
+    final IntBuffer routeStops;
+    final IntBuffer routeTripStart;
+    final IntBuffer routeTrips;
+    final IntBuffer stationRouteStart;
+    final IntBuffer stationRoutes;
+    final IntBuffer stationRoutePositions;
+
+    // Shortest ride times and fares between each station and a few
+    // landmarks, station-major; fares are empty when they cannot be bounded
+    private final int landmarkCount;
+    private final IntBuffer landmarkRideFrom;
+    private final IntBuffer landmarkRideTo;
+    private final IntBuffer landmarkFareFrom;
+    private final IntBuffer landmarkFareTo;
+
+    private volatile Map<String, Integer> trainsByNumber; // built on first trainId()
+
+    TimetableStore(ByteBuffer source) {
+        buffer = source.duplicate().order(TimetableFile.ORDER);
+        TimetableFile.validate(buffer);
+
+        stringOffsets = TimetableFile.ints(buffer, TimetableFile.STRING_OFFSETS);
+        stringBytes = TimetableFile.bytes(buffer, TimetableFile.STRING_BYTES);
+        decodedStrings = new String[Math.max(0, stringOffsets.limit() - 1)];
+
+        stationCode = TimetableFile.ints(buffer, TimetableFile.STATION_CODE);
+        stationName = TimetableFile.ints(buffer, TimetableFile.STATION_NAME);
+        stationByCode = TimetableFile.ints(buffer, TimetableFile.STATION_BY_CODE);
+        trainNumber = TimetableFile.ints(buffer, TimetableFile.TRAIN_NUMBER);
+        trainName = TimetableFile.ints(buffer, TimetableFile.TRAIN_NAME);
+        trainClass = TimetableFile.ints(buffer, TimetableFile.TRAIN_CLASS);
+        trainStopStart = TimetableFile.ints(buffer, TimetableFile.TRAIN_STOP_START);
+        platformName = TimetableFile.ints(buffer, TimetableFile.PLATFORM_NAME);
+
+        stopTrain = TimetableFile.ints(buffer, TimetableFile.STOP_TRAIN);
+        stopSequence = TimetableFile.ints(buffer, TimetableFile.STOP_SEQUENCE);
+        stopStation = TimetableFile.ints(buffer, TimetableFile.STOP_STATION);
+        stopArrival = TimetableFile.ints(buffer, TimetableFile.STOP_ARRIVAL);
+        stopDeparture = TimetableFile.ints(buffer, TimetableFile.STOP_DEPARTURE);
+        stopPlatform = TimetableFile.ints(buffer, TimetableFile.STOP_PLATFORM);
+        stopFare = TimetableFile.ints(buffer, TimetableFile.STOP_FARE);
+        stationDepartureStart = TimetableFile.ints(buffer, TimetableFile.STATION_DEPARTURE_START);
+        stationDepartures = TimetableFile.ints(buffer, TimetableFile.STATION_DEPARTURES);
+
+        connectionStop = TimetableFile.ints(buffer, TimetableFile.CONNECTION_STOP);
+        connectionDepartureStation = TimetableFile.ints(buffer, TimetableFile.CONNECTION_DEPARTURE_STATION);
+        connectionArrivalStation = TimetableFile.ints(buffer, TimetableFile.CONNECTION_ARRIVAL_STATION);
+        connectionDepartureTime = TimetableFile.ints(buffer, TimetableFile.CONNECTION_DEPARTURE_TIME);
+        connectionArrivalTime = TimetableFile.ints(buffer, TimetableFile.CONNECTION_ARRIVAL_TIME);
+        connectionTrip = TimetableFile.ints(buffer, TimetableFile.CONNECTION_TRIP);
+
+        routeStopStart = TimetableFile.ints(buffer, TimetableFile.ROUTE_STOP_START);
+        routeStops = TimetableFile.ints(buffer, TimetableFile.ROUTE_STOPS);
+        routeTripStart = TimetableFile.ints(buffer, TimetableFile.ROUTE_TRIP_START);
+        routeTrips = TimetableFile.ints(buffer, TimetableFile.ROUTE_TRIPS);
+        stationRouteStart = TimetableFile.ints(buffer, TimetableFile.STATION_ROUTE_START);
+        stationRoutes = TimetableFile.ints(buffer, TimetableFile.STATION_ROUTES);
+        stationRoutePositions = TimetableFile.ints(buffer, TimetableFile.STATION_ROUTE_POSITIONS);
+
+        landmarkCount = TimetableFile.ints(buffer, TimetableFile.LANDMARKS).limit();
+        landmarkRideFrom = TimetableFile.ints(buffer, TimetableFile.LANDMARK_RIDE_FROM);
+        landmarkRideTo = TimetableFile.ints(buffer, TimetableFile.LANDMARK_RIDE_TO);
+        landmarkFareFrom = TimetableFile.ints(buffer, TimetableFile.LANDMARK_FARE_FROM);
+        landmarkFareTo = TimetableFile.ints(buffer, TimetableFile.LANDMARK_FARE_TO);
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer.duplicate().order(TimetableFile.ORDER);
+    }
+
+    public int getStationCount() { return stationCode.limit(); }
+    public int getTrainCount() { return trainNumber.limit(); }
+    public int getStopTimeCount() { return stopTrain.limit(); }
+    public int getConnectionCount() { return connectionStop.limit(); }
+    public int getRouteCount() { return routeTripStart.limit() - 1; }
+
+    // Binary search over the code-sorted station permutation, comparing raw bytes
+    public int stationId(String code) {
+        if (code == null) {
+            return -1;
+        }
+        byte[] key = code.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = stationByCode.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int station = stationByCode.get(mid);
+            int cmp = compareString(stationCode.get(station), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return station;
+            }
+        }
+        return -1;
+    }
+
+    // Train with the given number, or -1
+    public int trainId(String number) {
+        if (number == null) {
+            return -1;
+        }
+        Map<String, Integer> trains = trainsByNumber;
+        if (trains == null) {
+            trains = new HashMap<>(getTrainCount() * 2);
+            for (int train = 0; train < getTrainCount(); train++) {
+                trains.put(getTrainNumber(train), train);
+            }
+            trainsByNumber = trains;
+        }
+        Integer train = trains.get(number);
+        return train == null ? -1 : train;
+    }
+
+    public String getStationCode(int station) { return string(stationCode.get(station)); }
+    public String getStationName(int station) { return string(stationName.get(station)); }
+
+    public String getTrainNumber(int train) { return string(trainNumber.get(train)); }
+    public String getTrainName(int train) { return string(trainName.get(train)); }
+    public String getTrainClass(int train) { return string(trainClass.get(train)); }
+    public int getFirstStop(int train) { return trainStopStart.get(train); }
+    public int getStopCount(int train) { return trainStopStart.get(train + 1) - trainStopStart.get(train); }
+
+    public int getTrain(int stop) { return stopTrain.get(stop); }
+    public int getSequence(int stop) { return stopSequence.get(stop); }
+    public int getStation(int stop) { return stopStation.get(stop); }
+    public int getArrival(int stop) { return stopArrival.get(stop); }
+    public int getDeparture(int stop) { return stopDeparture.get(stop); }
+    public int getFarePaise(int stop) { return stopFare.get(stop); }
+
+    public String getPlatform(int stop) {
+        int platform = stopPlatform.get(stop);
+        return platform == NO_PLATFORM ? null : string(platformName.get(platform));
+    }
+
+    public boolean hasNextStop(int stop) {
+        return stop + 1 < stopTrain.limit() && stopTrain.get(stop + 1) == stopTrain.get(stop);
+    }
+
+    public int getDepartureCount(int station) {
+        return stationDepartureStart.get(station + 1) - stationDepartureStart.get(station);
+    }
+
+    public int getStationDeparture(int station, int index) {
+        return stationDepartures.get(stationDepartureStart.get(station) + index);
+    }
+
+    // Index of the first departure from the station at or after the given time
+    public int firstDepartureAt(int station, int time) {
+        int low = stationDepartureStart.get(station);
+        int high = stationDepartureStart.get(station + 1);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (stopDeparture.get(stationDepartures.get(mid)) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - stationDepartureStart.get(station);
+    }
+
+    public int getLandmarkCount() { return landmarkCount; }
+
+    // Lower bound on the ride time from every station to the target, or
+    // NO_PATH where the target cannot be reached at all
+    public void rideTimeLowerBounds(int target, int[] bounds) {
+        lowerBounds(landmarkRideFrom, landmarkRideTo, target, bounds);
+    }
+
+    // Lower bound on the fare from every station to the target; zero when
+    // the timetable has no fare bounds
+    public void fareLowerBounds(int target, int[] bounds) {
+        if (landmarkFareFrom.limit() == 0) {
+            Arrays.fill(bounds, 0);
+            return;
+        }
+        lowerBounds(landmarkFareFrom, landmarkFareTo, target, bounds);
+    }
+
+    // Landmark L bounds d(s, t) below by d(L, t) - d(L, s) and by d(s, L) - d(t, L)
+    private void lowerBounds(IntBuffer distanceFrom, IntBuffer distanceTo, int target,
+                             int[] bounds) {
+        int[] targetFrom = new int[landmarkCount];
+        int[] targetTo = new int[landmarkCount];
+        for (int l = 0; l < landmarkCount; l++) {
+            targetFrom[l] = distanceFrom.get(target * landmarkCount + l);
+            targetTo[l] = distanceTo.get(target * landmarkCount + l);
+        }
+        for (int station = 0; station < bounds.length; station++) {
+            int bound = 0;
+            for (int l = 0; l < landmarkCount; l++) {
+                int from = distanceFrom.get(station * landmarkCount + l);
+                int to = distanceTo.get(station * landmarkCount + l);
+                if (from != NO_PATH) {
+                    if (targetFrom[l] == NO_PATH) {
+                        bound = NO_PATH; // L reaches the station but not the target
+                        break;
+                    }
+                    bound = Math.max(bound, targetFrom[l] - from);
+                }
+                if (targetTo[l] != NO_PATH) {
+                    if (to == NO_PATH) {
+                        bound = NO_PATH; // the target reaches L but the station does not
+                        break;
+                    }
+                    bound = Math.max(bound, to - targetTo[l]);
+                }
+            }
+            bounds[station] = bound;
+        }
+    }
+
+    // Strings are decoded on first use only; racing decodes yield equal values
+    private String string(int id) {
+        if (id == NO_STRING) {
+            return null;
+        }
+        String value = decodedStrings[id];
+        if (value == null) {
+            int start = stringOffsets.get(id);
+            byte[] bytes = new byte[stringOffsets.get(id + 1) - start];
+            ByteBuffer source = stringBytes.duplicate();
+            source.position(start);
+            source.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            decodedStrings[id] = value;
+        }
+        return value;
+    }
+
+    private int compareString(int id, byte[] key) {
+        int start = stringOffsets.get(id);
+        int length = stringOffsets.get(id + 1) - start;
+        for (int i = 0; i < length && i < key.length; i++) {
+            int cmp = (stringBytes.get(start + i) & 0xFF) - (key[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    public static class Builder {
+        final List<String> stationCodes = new ArrayList<>();
+        final List<String> stationNames = new ArrayList<>();
+        final Map<String, Integer> stationIds = new HashMap<>();
+        final List<String> trainNumbers = new ArrayList<>();
+        final List<String> trainNames = new ArrayList<>();
+        final List<String> trainClasses = new ArrayList<>();
+        final Map<String, Integer> trainIds = new HashMap<>();
+        final List<String> platforms = new ArrayList<>();
+        final Map<String, Integer> platformIds = new HashMap<>();
+        final List<Integer> trainStopCounts = new ArrayList<>();
+
+        final IntList stopTrain = new IntList();
+        final IntList stopSequence = new IntList();
+        final IntList stopStation = new IntList();
+        final IntList stopArrival = new IntList();
+        final IntList stopDeparture = new IntList();
+        final IntList stopPlatform = new IntList();
+        final IntList stopFare = new IntList();
+
+        public int addStation(String code, String name) {
+            Integer id = stationIds.get(code);
+            if (id != null) {
+                if (name != null) {
+                    stationNames.set(id, name);
+                }
+                return id;
+            }
+            stationIds.put(code, stationCodes.size());
+            stationCodes.add(code);
+            stationNames.add(name != null ? name : code);
+            return stationCodes.size() - 1;
+        }
+
+        public int addTrain(String number, String name, String trainClass) {
+            Integer id = trainIds.get(number);
+            if (id != null) {
+                return id;
+            }
+            trainIds.put(number, trainNumbers.size());
+            trainNumbers.add(number);
+            trainNames.add(name);
+            trainClasses.add(trainClass);
+            trainStopCounts.add(0);
+            return trainNumbers.size() - 1;
+        }
+
+        // Stop times of a train must be added in stop order
+        public void addStopTime(int train, int station, int arrival, int departure,
+                                String platform, int farePaise) {
+            int sequence = trainStopCounts.get(train);
+            trainStopCounts.set(train, sequence + 1);
+
+            int platformId = NO_PLATFORM;
+            if (platform != null) {
+                platformId = platformIds.computeIfAbsent(platform, p -> {
+                    platforms.add(p);
+                    return platforms.size() - 1;
+                });
+            }
+
+            stopTrain.add(train);
+            stopSequence.add(sequence);
+            stopStation.add(station);
+            stopArrival.add(arrival);
+            stopDeparture.add(departure);
+            stopPlatform.add(platformId);
+            stopFare.add(farePaise);
+        }
+
+        public TimetableStore build() {
+            return new TimetableStore(TimetableCompiler.compile(this));
+        }
+    }
+
+    static class IntList {
+        private int[] values = new int[64];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
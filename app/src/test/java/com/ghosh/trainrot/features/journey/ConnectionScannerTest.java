@@ -0,0 +1,89 @@
+package com.ghosh.trainrot.features.journey;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import org.junit.Test;
+
+public class ConnectionScannerTest {
+    private static final int MAX_LEGS = 3;
+    private static final int MIN_TRANSFER = 15;
+
+    @Test
+    public void transferWindowKeepsLaterArrivalThatCanConnect() {
+        TimetableStore store = TestTimetables.connectionOnlyFromLaterArrival(10);
+        ConnectionScanner scanner = new ConnectionScanner(store);
+        int target = store.stationId("B");
+
+        ConnectionScanner.ScanResult scan = scanner.scan(store.stationId("A"), target, 540,
+            MAX_LEGS, new SearchConstraints(MIN_TRANSFER, 150, null));
+
+        assertEquals(830, scan.getEarliestArrival(target));
+        List<ConnectionScanner.Journey> journeys = scan.getJourneys(target);
+        assertEquals(1, journeys.size());
+        assertArrayEquals(new String[] {"2", "3"}, TestTimetables.trainsOf(store, journeys.get(0)));
+    }
+
+    @Test
+    public void transferWindowBoundsAreInclusive() {
+        TimetableStore store = TestTimetables.connectionOnlyFromLaterArrival(10);
+        ConnectionScanner scanner = new ConnectionScanner(store);
+        int source = store.stationId("A");
+        int target = store.stationId("B");
+
+        assertEquals(830, scanner.scan(source, target, 540, MAX_LEGS,
+            new SearchConstraints(MIN_TRANSFER, 120, null)).getEarliestArrival(target));
+        assertEquals(ConnectionScanner.UNREACHED, scanner.scan(source, target, 540, MAX_LEGS,
+            new SearchConstraints(MIN_TRANSFER, 119, null)).getEarliestArrival(target));
+        assertEquals(830, scanner.scan(source, target, 540, MAX_LEGS,
+            new SearchConstraints(120, 120, null)).getEarliestArrival(target));
+        assertEquals(830, scanner.scan(source, target, 540, MAX_LEGS, 190)
+            .getEarliestArrival(target));
+        assertEquals(ConnectionScanner.UNREACHED, scanner.scan(source, target, 540, MAX_LEGS, 191)
+            .getEarliestArrival(target));
+    }
+
+    @Test
+    public void withoutWindowEarliestArrivalCanWait() {
+        TimetableStore store = TestTimetables.connectionOnlyFromLaterArrival(10);
+        int target = store.stationId("B");
+
+        ConnectionScanner.ScanResult scan = new ConnectionScanner(store).scan(
+            store.stationId("A"), target, 540, MAX_LEGS, MIN_TRANSFER);
+
+        assertEquals(830, scan.getEarliestArrival(target));
+        assertEquals(2, scan.getFewestLegs(target));
+    }
+
+    @Test
+    public void keepsSlowerThroughTrainLeavingAfterFasterArrival() {
+        TimetableStore store = TestTimetables.directOrFasterChange();
+        int target = store.stationId("C");
+
+        ConnectionScanner.ScanResult scan = new ConnectionScanner(store).scan(
+            store.stationId("A"), target, 540, MAX_LEGS, MIN_TRANSFER);
+
+        assertEquals(900, scan.getEarliestArrival(target, 1));
+        assertEquals(800, scan.getEarliestArrival(target));
+        assertEquals(2, scan.getFewestLegs(target));
+        List<ConnectionScanner.Journey> journeys = scan.getJourneys(target);
+        assertEquals(2, journeys.size());
+        assertArrayEquals(new String[] {"10"}, TestTimetables.trainsOf(store, journeys.get(0)));
+        assertEquals(2, journeys.get(1).getLegCount());
+        assertEquals(journeys.get(1).getLegCount(), scan.getEarliestJourney(target).getLegCount());
+    }
+
+    @Test
+    public void departureAfterLastTrainIsUnreached() {
+        TimetableStore store = TestTimetables.directOrFasterChange();
+        int target = store.stationId("C");
+
+        ConnectionScanner.ScanResult scan = new ConnectionScanner(store).scan(
+            store.stationId("A"), target, 611, MAX_LEGS, MIN_TRANSFER);
+
+        assertEquals(ConnectionScanner.UNREACHED, scan.getEarliestArrival(target));
+        assertEquals(-1, scan.getFewestLegs(target));
+        assertNull(scan.getEarliestJourney(target));
+        assertTrue(scan.getJourneys(target).isEmpty());
+    }
+}
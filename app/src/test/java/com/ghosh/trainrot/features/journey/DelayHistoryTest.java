@@ -0,0 +1,87 @@
+package com.ghosh.trainrot.features.journey;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class DelayHistoryTest {
+    private static final int CAPACITY = 3;
+    private static final int ROW = CAPACITY * DelayHistory.FEATURE_COUNT;
+
+    @Test
+    public void rowIsOldestFirstAndZeroPadded() {
+        DelayHistory history = new DelayHistory(0, CAPACITY);
+        history.add(record(10, 0.5f, true), 7);
+        history.add(record(20, 1.0f, false), 8);
+        float[] row = filled();
+
+        assertEquals(8, history.copyFeaturesTo(row));
+
+        assertEquals(10f, row[0], 0f);
+        assertEquals(1f, row[1], 0f); // weekend
+        assertEquals(0.5f, row[3], 1f / 255);
+        assertEquals(1f, row[7], 0f); // technical issue
+        assertEquals(20f, row[8], 0f);
+        assertEquals(0f, row[9], 0f);
+        assertEquals(1f, row[11], 0f);
+        for (int i = 2 * DelayHistory.FEATURE_COUNT; i < ROW; i++) {
+            assertEquals(0f, row[i], 0f);
+        }
+    }
+
+    @Test
+    public void fullRingDropsOldestFromRow() {
+        DelayHistory history = new DelayHistory(0, CAPACITY);
+        for (int delay = 1; delay <= 5; delay++) {
+            history.add(record(delay, 0f, false), delay);
+        }
+        float[] row = filled();
+
+        assertEquals(5, history.copyFeaturesTo(row));
+        assertEquals(3f, row[0], 0f);
+        assertEquals(4f, row[DelayHistory.FEATURE_COUNT], 0f);
+        assertEquals(5f, row[2 * DelayHistory.FEATURE_COUNT], 0f);
+        assertEquals(3, history.size());
+        assertEquals(3, history.get(0).delayMinutes);
+    }
+
+    @Test
+    public void listAddKeepsVersion() {
+        DelayHistory history = new DelayHistory(0, CAPACITY);
+        history.add(record(10, 0f, false), 4);
+        history.add(record(20, 0f, false));
+
+        assertEquals(4, history.getVersion());
+    }
+
+    @Test
+    public void sameFeaturesIgnoresStationAndTime() {
+        DelayHistory history = new DelayHistory(0, CAPACITY);
+        DelayHistory other = new DelayHistory(0, CAPACITY);
+        for (int delay = 1; delay <= 4; delay++) {
+            history.add(record(delay, 0.2f, false));
+        }
+        for (int delay = 2; delay <= 4; delay++) {
+            DelayPredictor.DelayRecord record = record(delay, 0.2f, false);
+            record.station = "ELSEWHERE";
+            record.timestamp += 60_000;
+            other.add(record);
+        }
+
+        assertTrue(history.sameFeatures(other));
+        other.add(record(5, 0.2f, false));
+        assertFalse(history.sameFeatures(other));
+    }
+
+    private static float[] filled() {
+        float[] row = new float[ROW];
+        Arrays.fill(row, -1f);
+        return row;
+    }
+
+    private static DelayPredictor.DelayRecord record(int delay, float weather, boolean flags) {
+        return new DelayPredictor.DelayRecord("T1", "S1", delay, 1_700_000_000_000L, flags,
+            false, weather, 0f, false, false, flags);
+    }
+}
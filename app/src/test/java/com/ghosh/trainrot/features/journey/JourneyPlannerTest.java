@@ -0,0 +1,107 @@
+package com.ghosh.trainrot.features.journey;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JourneyPlannerTest {
+    private DelayPredictor delayPredictor;
+    private JourneyPlanner planner;
+    private JourneyPlanner.JourneyPreferences preferences;
+
+    @Before
+    public void setUp() {
+        delayPredictor = mock(DelayPredictor.class);
+        // No delay predicted for any leg
+        when(delayPredictor.predictDelays(any(int[].class), any(int[].class)))
+            .thenAnswer(invocation -> new int[invocation.<int[]>getArgument(0).length]);
+        planner = new JourneyPlanner(delayPredictor, mock(StationFacilityAnalyzer.class),
+            mock(HistoricalDataAnalyzer.class));
+        preferences = new JourneyPlanner.JourneyPreferences();
+        preferences.setIncludeLuggageBuffer(false);
+    }
+
+    @Test
+    public void lowestCostPicksLaterCheaperTrainOnSameStops() {
+        planner.loadTimetable(TestTimetables.expressAndSlowTrain());
+
+        List<JourneyPlanner.JourneyRoute> routes = planner.planJourney("A", "C", 540,
+            JourneyPlanner.OptimizationMode.LOWEST_COST, preferences);
+
+        assertEquals(2, routes.size());
+        assertEquals("200", routes.get(0).getLegs().get(0).getTrainNumber());
+        assertEquals(100.0, routes.get(0).getTotalCost(), 1e-9);
+        assertEquals("100", routes.get(1).getLegs().get(0).getTrainNumber());
+        assertEquals(500.0, routes.get(1).getTotalCost(), 1e-9);
+    }
+
+    @Test
+    public void lowestCostSplitsTicketsUnderNonAdditiveFares() {
+        planner.loadTimetable(TestTimetables.expressAndSlowTrain());
+        // A ticket past the next stop costs double
+        planner.setSegmentFares((store, board, alight) ->
+            (store.getFarePaise(alight) - store.getFarePaise(board)) * (alight - board > 1 ? 2 : 1));
+
+        List<JourneyPlanner.JourneyRoute> routes = planner.planJourney("A", "C", 540,
+            JourneyPlanner.OptimizationMode.LOWEST_COST, preferences);
+        // Planned again from the cache, which the first call's split must not have changed
+        List<JourneyPlanner.JourneyRoute> again = planner.planJourney("A", "C", 540,
+            JourneyPlanner.OptimizationMode.LOWEST_COST, preferences);
+
+        for (List<JourneyPlanner.JourneyRoute> result : List.of(routes, again)) {
+            JourneyPlanner.JourneyRoute cheapest = result.get(0);
+            assertEquals(100.0, cheapest.getTotalCost(), 1e-9);
+            assertEquals(2, cheapest.getLegs().size());
+            assertEquals("200", cheapest.getLegs().get(0).getTrainNumber());
+            assertEquals("B", cheapest.getLegs().get(0).getDestinationStation());
+            assertEquals(50.0, cheapest.getLegs().get(0).getFare(), 1e-9);
+            assertEquals("200", cheapest.getLegs().get(1).getTrainNumber());
+            assertEquals(50.0, cheapest.getLegs().get(1).getFare(), 1e-9);
+            assertEquals(500.0, result.get(1).getTotalCost(), 1e-9);
+        }
+    }
+
+    @Test
+    public void plansOverBundledTimetable() throws Exception {
+        // The asset sits inside a larger file, as it does inside the APK
+        ByteBuffer timetable = TestTimetables.expressAndSlowTrain().getBuffer();
+        byte[] bytes = new byte[timetable.remaining()];
+        timetable.get(bytes);
+        File file = File.createTempFile("bundle", ".apk");
+        file.deleteOnExit();
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(new byte[64]);
+            outputStream.write(bytes);
+        }
+        RandomAccessFile bundle = new RandomAccessFile(file, "r");
+        AssetFileDescriptor descriptor = mock(AssetFileDescriptor.class);
+        when(descriptor.getFileDescriptor()).thenReturn(bundle.getFD());
+        when(descriptor.getStartOffset()).thenReturn(64L);
+        when(descriptor.getDeclaredLength()).thenReturn((long) bytes.length);
+        AssetManager assets = mock(AssetManager.class);
+        when(assets.openFd("timetable.trtt")).thenReturn(descriptor);
+        Context context = mock(Context.class);
+        when(context.getAssets()).thenReturn(assets);
+
+        JourneyPlanner bundled = new JourneyPlanner(context, delayPredictor,
+            mock(StationFacilityAnalyzer.class), mock(HistoricalDataAnalyzer.class));
+        List<JourneyPlanner.JourneyRoute> routes = bundled.planJourney("A", "C",
+            JourneyPlanner.OptimizationMode.MINIMUM_DURATION, preferences);
+
+        assertEquals(2, routes.size());
+        assertEquals("100", routes.get(0).getLegs().get(0).getTrainNumber());
+        assertEquals("200", routes.get(1).getLegs().get(0).getTrainNumber());
+    }
+}
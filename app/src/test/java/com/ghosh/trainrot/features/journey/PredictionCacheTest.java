@@ -0,0 +1,75 @@
+package com.ghosh.trainrot.features.journey;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PredictionCacheTest {
+    @Test
+    public void newerVersionInvalidatesOnlyThatTrain() {
+        PredictionCache cache = new PredictionCache(64);
+        cache.put(1, 5, 12);
+        cache.put(2, 6, 30);
+
+        assertEquals(12, cache.get(1, 5));
+        assertEquals(PredictionCache.MISS, cache.get(1, 7));
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(30, cache.get(2, 6));
+
+        cache.put(1, 7, 15);
+        assertEquals(15, cache.get(1, 7));
+        assertEquals(PredictionCache.MISS, cache.get(1, 5));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void unseenTrainMissesWithoutInvalidating() {
+        PredictionCache cache = new PredictionCache(64);
+        cache.put(1, 5, 12);
+
+        assertEquals(PredictionCache.MISS, cache.get(3, 5));
+        assertEquals(0, cache.getInvalidationCount());
+        assertEquals(0.0, cache.getHitRate(), 0.0);
+    }
+
+    @Test
+    public void thirdTrainInASetEvictsTheOldest() {
+        // Capacity two is a single set holding two trains
+        PredictionCache cache = new PredictionCache(2);
+        cache.put(1, 1, 11);
+        cache.put(2, 1, 22);
+        cache.put(3, 1, 33);
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(PredictionCache.MISS, cache.get(1, 1));
+        assertEquals(22, cache.get(2, 1));
+        assertEquals(33, cache.get(3, 1));
+
+        // Updating a cached train replaces it in place
+        cache.put(2, 2, 23);
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(23, cache.get(2, 2));
+        assertEquals(33, cache.get(3, 1));
+    }
+
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(8, new PredictionCache(5).getCapacity());
+        assertEquals(8, new PredictionCache(8).getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCapacityBelowOneSet() {
+        new PredictionCache(1);
+    }
+
+    @Test
+    public void clearDropsEveryEntry() {
+        PredictionCache cache = new PredictionCache(64);
+        cache.put(1, 5, 12);
+        cache.clear();
+
+        assertEquals(PredictionCache.MISS, cache.get(1, 5));
+    }
+}
@@ -0,0 +1,176 @@
+package com.ghosh.trainrot.features.journey;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+public class RaptorPlannerTest {
+    private static final int MAX_LEGS = 3;
+    private static final int MIN_TRANSFER = 15;
+    private static final long SEED = 42;
+    private static final int QUERIES = 80;
+
+    @Test
+    public void laterCheaperTrainOnSameStopsJoinsParetoSet() {
+        TimetableStore store = TestTimetables.expressAndSlowTrain();
+        RaptorPlanner planner = new RaptorPlanner(store);
+
+        List<ConnectionScanner.Journey> journeys = planner.findParetoJourneys(
+            store.stationId("A"), store.stationId("C"), 540, MAX_LEGS, MIN_TRANSFER);
+
+        assertEquals(2, journeys.size());
+        // Ordered by legs, then arrival: the express first, then the cheaper train
+        assertEquals("100", trainOf(store, journeys.get(0)));
+        assertEquals("200", trainOf(store, journeys.get(1)));
+    }
+
+    @Test
+    public void transferWindowKeepsLaterArrivalThatCanConnect() {
+        TimetableStore store = TestTimetables.connectionOnlyFromLaterArrival(10);
+        RaptorPlanner planner = new RaptorPlanner(store);
+
+        List<ConnectionScanner.Journey> journeys = planner.findParetoJourneys(
+            store.stationId("A"), store.stationId("B"), 540, MAX_LEGS,
+            new SearchConstraints(MIN_TRANSFER, 150, null));
+
+        assertEquals(1, journeys.size());
+        assertArrayEquals(new String[] {"2", "3"}, TestTimetables.trainsOf(store, journeys.get(0)));
+    }
+
+    @Test
+    public void transferWindowKeepsLaterArrivalDominatedWithoutWindow() {
+        // The earlier train is cheaper too, so it runs on its own route and
+        // beats the later arrival on every criterion
+        TimetableStore store = TestTimetables.connectionOnlyFromLaterArrival(5);
+        RaptorPlanner planner = new RaptorPlanner(store);
+
+        List<ConnectionScanner.Journey> journeys = planner.findParetoJourneys(
+            store.stationId("A"), store.stationId("B"), 540, MAX_LEGS,
+            new SearchConstraints(MIN_TRANSFER, 150, null));
+
+        assertEquals(1, journeys.size());
+        assertArrayEquals(new String[] {"2", "3"}, TestTimetables.trainsOf(store, journeys.get(0)));
+    }
+
+    @Test
+    public void transferWindowBoundsAreInclusive() {
+        TimetableStore store = TestTimetables.connectionOnlyFromLaterArrival(10);
+        RaptorPlanner planner = new RaptorPlanner(store);
+        int source = store.stationId("A");
+        int target = store.stationId("B");
+
+        assertEquals(1, planner.findParetoJourneys(source, target, 540, MAX_LEGS,
+            new SearchConstraints(MIN_TRANSFER, 120, null)).size());
+        assertTrue(planner.findParetoJourneys(source, target, 540, MAX_LEGS,
+            new SearchConstraints(MIN_TRANSFER, 119, null)).isEmpty());
+        assertEquals(1, planner.findParetoJourneys(source, target, 540, MAX_LEGS,
+            new SearchConstraints(120, 120, null)).size());
+        assertEquals(1, planner.findParetoJourneys(source, target, 540, MAX_LEGS, 190).size());
+        assertTrue(planner.findParetoJourneys(source, target, 540, MAX_LEGS, 191).isEmpty());
+    }
+
+    @Test
+    public void keepsSlowerThroughTrainAndFasterChange() {
+        TimetableStore store = TestTimetables.directOrFasterChange();
+
+        List<ConnectionScanner.Journey> journeys = new RaptorPlanner(store).findParetoJourneys(
+            store.stationId("A"), store.stationId("C"), 540, MAX_LEGS, MIN_TRANSFER);
+
+        assertEquals(Arrays.asList("1/900/10000", "2/800/10000", "2/900/9000"),
+            TestTimetables.criteriaOf(store, journeys));
+        assertArrayEquals(new String[] {"20", "30"}, TestTimetables.trainsOf(store, journeys.get(1)));
+    }
+
+    @Test
+    public void earliestArrivalsAgreeWithConnectionScan() {
+        TimetableStore store = TestTimetables.randomNetwork(SEED, 40, 300);
+        RaptorPlanner planner = new RaptorPlanner(store);
+        ConnectionScanner scanner = new ConnectionScanner(store);
+        Random random = new Random(SEED);
+        int reached = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            int source = random.nextInt(store.getStationCount());
+            int target = random.nextInt(store.getStationCount());
+            int departure = 300 + random.nextInt(600);
+            if (source == target) {
+                continue;
+            }
+            // Alternate plain searches with transfer-window ones
+            SearchConstraints constraints = q % 2 == 0
+                ? SearchConstraints.withMinTransfer(MIN_TRANSFER)
+                : new SearchConstraints(MIN_TRANSFER, 90, null);
+
+            ConnectionScanner.ScanResult scan = scanner.scan(source, target, departure, MAX_LEGS,
+                constraints);
+            List<ConnectionScanner.Journey> journeys = planner.findParetoJourneys(source, target,
+                departure, MAX_LEGS, constraints);
+
+            for (int legs = 1; legs <= MAX_LEGS; legs++) {
+                int earliest = ConnectionScanner.UNREACHED;
+                for (ConnectionScanner.Journey journey : journeys) {
+                    if (journey.getLegCount() <= legs) {
+                        earliest = Math.min(earliest,
+                            store.getArrival(journey.getAlightStop(journey.getLegCount() - 1)));
+                    }
+                }
+                assertEquals("query " + q + " within " + legs + " legs",
+                    scan.getEarliestArrival(target, legs), earliest);
+            }
+            if (!journeys.isEmpty()) {
+                reached++;
+            }
+        }
+        assertTrue(reached > QUERIES / 4);
+    }
+
+    @Test
+    public void parallelScanMatchesSequential() {
+        TimetableStore store = TestTimetables.randomNetwork(SEED, 40, 300);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertSameParetoSets(store, new RaptorPlanner(store), new RaptorPlanner(store, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void goalDirectedSearchMatchesPlain() {
+        TimetableStore store = TestTimetables.randomNetwork(SEED, 40, 300);
+        RaptorPlanner goalDirected = new RaptorPlanner(store);
+        goalDirected.setGoalDirected(true);
+        assertSameParetoSets(store, new RaptorPlanner(store), goalDirected);
+    }
+
+    private static void assertSameParetoSets(TimetableStore store, RaptorPlanner expected,
+                                             RaptorPlanner actual) {
+        Random random = new Random(SEED + 1);
+        int nonEmpty = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            int source = random.nextInt(store.getStationCount());
+            int target = random.nextInt(store.getStationCount());
+            int departure = 300 + random.nextInt(600);
+            SearchConstraints constraints = q % 2 == 0
+                ? SearchConstraints.withMinTransfer(MIN_TRANSFER)
+                : new SearchConstraints(MIN_TRANSFER, 90, null);
+
+            List<String> journeys = TestTimetables.criteriaOf(store, expected.findParetoJourneys(
+                source, target, departure, MAX_LEGS, constraints));
+            assertEquals("query " + q, journeys, TestTimetables.criteriaOf(store,
+                actual.findParetoJourneys(source, target, departure, MAX_LEGS, constraints)));
+            if (!journeys.isEmpty()) {
+                nonEmpty++;
+            }
+        }
+        assertTrue(nonEmpty > QUERIES / 4);
+    }
+
+    private static String trainOf(TimetableStore store, ConnectionScanner.Journey journey) {
+        assertEquals(1, journey.getLegCount());
+        return store.getTrainNumber(store.getTrain(journey.getBoardStop(0)));
+    }
+}
@@ -0,0 +1,80 @@
+package com.ghosh.trainrot.features.journey;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class RouteCacheTest {
+    private final RouteCache cache = new RouteCache(4, 1, TimeUnit.HOURS);
+
+    @Test
+    public void returnedRoutesDoNotAliasCachedOnes() {
+        RouteCache.Key key = key("A");
+        JourneyPlanner.JourneyRoute route = route(250.0, 5);
+        cache.put(key, Collections.singletonList(route));
+        // Changing the route after put leaves the cached copy alone
+        route.setTotalCost(1.0);
+        route.getLegs().get(0).setPredictedDelay(99);
+
+        List<JourneyPlanner.JourneyRoute> first = cache.get(key);
+        first.get(0).setTotalCost(2.0);
+        first.get(0).getLegs().get(0).setPredictedDelay(42);
+        first.get(0).getLegs().get(0).setFare(3.0);
+
+        JourneyPlanner.JourneyRoute second = cache.get(key).get(0);
+        assertEquals(250.0, second.getTotalCost(), 1e-9);
+        assertEquals(5, second.getLegs().get(0).getPredictedDelay());
+        assertEquals(250.0, second.getLegs().get(0).getFare(), 1e-9);
+        assertEquals("12951", second.getLegs().get(0).getTrainNumber());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        for (String source : new String[] {"A", "B", "C", "D"}) {
+            cache.put(key(source), Collections.singletonList(route(1.0, 0)));
+        }
+        assertNotNull(cache.get(key("A")));
+        cache.put(key("E"), Collections.singletonList(route(1.0, 0)));
+
+        assertEquals(4, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(key("B")));
+        assertNotNull(cache.get(key("A")));
+    }
+
+    @Test
+    public void keyIgnoresTrainClassOrderButNotDelayEpoch() {
+        JourneyPlanner.JourneyPreferences preferences = new JourneyPlanner.JourneyPreferences();
+        preferences.setPreferredTrainClasses(List.of("3A", "2A"));
+        JourneyPlanner.JourneyPreferences reordered = new JourneyPlanner.JourneyPreferences();
+        reordered.setPreferredTrainClasses(List.of("2A", "3A", "2A"));
+
+        assertEquals(key("A", preferences, 0), key("A", reordered, 0));
+        assertNotEquals(key("A", preferences, 0), key("A", preferences, 1));
+    }
+
+    private static RouteCache.Key key(String source) {
+        return key(source, new JourneyPlanner.JourneyPreferences(), 0);
+    }
+
+    private static RouteCache.Key key(String source, JourneyPlanner.JourneyPreferences preferences,
+                                      long delayEpoch) {
+        return new RouteCache.Key(source, "Z", 540, JourneyPlanner.OptimizationMode.MINIMUM_DURATION,
+            preferences, 1, delayEpoch);
+    }
+
+    private static JourneyPlanner.JourneyRoute route(double fare, int delay) {
+        JourneyPlanner.JourneyLeg leg = new JourneyPlanner.JourneyLeg();
+        leg.setTrainNumber("12951");
+        leg.setSourceStation("A");
+        leg.setDestinationStation("Z");
+        leg.setFare(fare);
+        leg.setPredictedDelay(delay);
+        JourneyPlanner.JourneyRoute route = new JourneyPlanner.JourneyRoute("A").addLeg(leg);
+        route.setTotalCost(fare);
+        return route;
+    }
+}
@@ -0,0 +1,44 @@
+package com.ghosh.trainrot.features.journey;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ScoreTableTest {
+    private final ScoreTable table = new ScoreTable(0.5);
+
+    @Test
+    public void unsetIdsReadTheDefault() {
+        table.set(10, 0.9);
+
+        assertEquals(0.9, table.get(10), 0.0);
+        assertEquals(0.5, table.get(0), 0.0);
+        assertEquals(0.5, table.get(11), 0.0);
+        assertEquals(0.5, table.get(1000), 0.0);
+        assertEquals(0.5, table.get(-1), 0.0);
+    }
+
+    @Test
+    public void growsGeometricallyAndWritesInPlace() {
+        for (int id = 0; id < 1000; id++) {
+            table.set(id, id / 1000.0);
+        }
+        double[] snapshot = table.snapshot();
+        assertTrue(snapshot.length >= 1000 && snapshot.length < 2000);
+        // Setting an ID the array already holds reuses it
+        table.set(500, 1.0);
+        assertSame(snapshot, table.snapshot());
+        assertEquals(1.0, table.get(snapshot, 500), 0.0);
+        for (int id = 0; id < 1000; id++) {
+            assertEquals(id == 500 ? 1.0 : id / 1000.0, table.get(id), 0.0);
+        }
+        for (int id = 1000; id < snapshot.length; id++) {
+            assertEquals(0.5, snapshot[id], 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeIds() {
+        table.set(-1, 1.0);
+    }
+}
@@ -0,0 +1,111 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Small hand-written timetables. A train stops at each station at one time
+// (arrival and departure alike); fares are in rupees from its first stop.
+final class TestTimetables {
+    private TestTimetables() {
+    }
+
+    static int addTrain(TimetableStore.Builder builder, String number, String trainClass,
+                        String[] stations, int[] times, int[] fares) {
+        int train = builder.addTrain(number, "Train " + number, trainClass);
+        for (int i = 0; i < stations.length; i++) {
+            builder.addStopTime(train, builder.addStation(stations[i], null), times[i],
+                times[i], null, fares[i] * 100);
+        }
+        return train;
+    }
+
+    // A 500 rupee express and a 100 rupee slow train over the same stops,
+    // the express leaving first and arriving first
+    static TimetableStore expressAndSlowTrain() {
+        TimetableStore.Builder builder = new TimetableStore.Builder();
+        addTrain(builder, "100", "2A", new String[] {"A", "B", "C"},
+            new int[] {600, 630, 700}, new int[] {0, 250, 500});
+        addTrain(builder, "200", "SL", new String[] {"A", "B", "C"},
+            new int[] {610, 700, 800}, new int[] {0, 50, 100});
+        return builder.build();
+    }
+
+    // Two trains from A reach X at 610 and 680, the earlier one for the given
+    // fare and the later one for 10 rupees; the only train on from X leaves
+    // at 800, 190 and 120 minutes later
+    static TimetableStore connectionOnlyFromLaterArrival(int earlierFare) {
+        TimetableStore.Builder builder = new TimetableStore.Builder();
+        addTrain(builder, "1", "SL", new String[] {"A", "X"},
+            new int[] {600, 610}, new int[] {0, earlierFare});
+        addTrain(builder, "2", "SL", new String[] {"A", "X"},
+            new int[] {640, 680}, new int[] {0, 10});
+        addTrain(builder, "3", "SL", new String[] {"X", "B"},
+            new int[] {800, 830}, new int[] {0, 20});
+        return builder.build();
+    }
+
+    // A through train from A reaching C at 900, and a change at B onto a
+    // train reaching C at 800, before the through train has even left B
+    static TimetableStore directOrFasterChange() {
+        TimetableStore.Builder builder = new TimetableStore.Builder();
+        addTrain(builder, "10", "SL", new String[] {"A", "B", "C"},
+            new int[] {600, 820, 900}, new int[] {0, 50, 100});
+        addTrain(builder, "20", "SL", new String[] {"A", "B"},
+            new int[] {610, 650}, new int[] {0, 40});
+        addTrain(builder, "30", "SL", new String[] {"B", "C"},
+            new int[] {720, 800}, new int[] {0, 60});
+        return builder.build();
+    }
+
+    // Seeded trains of two to six stops, each stop one to three stations on
+    // from the last, so that many routes cross at every station
+    static TimetableStore randomNetwork(long seed, int stations, int trains) {
+        Random random = new Random(seed);
+        TimetableStore.Builder builder = new TimetableStore.Builder();
+        for (int t = 0; t < trains; t++) {
+            int stops = 2 + random.nextInt(5);
+            String[] codes = new String[stops];
+            int[] times = new int[stops];
+            int[] fares = new int[stops];
+            int station = random.nextInt(stations);
+            int time = 300 + random.nextInt(900);
+            int fare = 0;
+            for (int i = 0; i < stops; i++) {
+                codes[i] = "S" + station;
+                times[i] = time;
+                fares[i] = fare;
+                station = (station + 1 + random.nextInt(3)) % stations;
+                time += 10 + random.nextInt(50);
+                fare += 10 + random.nextInt(40);
+            }
+            addTrain(builder, String.valueOf(1000 + t), "SL", codes, times, fares);
+        }
+        return builder.build();
+    }
+
+    // Each journey as legs/arrival/fare, which identifies it within a Pareto
+    // set even where equal journeys on different trains could be kept instead
+    static List<String> criteriaOf(TimetableStore store, List<ConnectionScanner.Journey> journeys) {
+        List<String> criteria = new ArrayList<>(journeys.size());
+        for (ConnectionScanner.Journey journey : journeys) {
+            int legs = journey.getLegCount();
+            int fare = 0;
+            for (int i = 0; i < legs; i++) {
+                fare += store.getFarePaise(journey.getAlightStop(i))
+                    - store.getFarePaise(journey.getBoardStop(i));
+            }
+            criteria.add(legs + "/" + store.getArrival(journey.getAlightStop(legs - 1))
+                + "/" + fare);
+        }
+        return criteria;
+    }
+
+    static String[] trainsOf(TimetableStore store, ConnectionScanner.Journey journey) {
+        String[] trains = new String[journey.getLegCount()];
+        for (int i = 0; i < trains.length; i++) {
+            trains[i] = store.getTrainNumber(store.getTrain(journey.getBoardStop(i)));
+        }
+        return trains;
+    }
+}
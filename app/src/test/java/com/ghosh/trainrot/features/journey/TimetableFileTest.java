@@ -0,0 +1,83 @@
+package com.ghosh.trainrot.features.journey;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class TimetableFileTest {
+    @Test
+    public void mapsWrittenFile() throws Exception {
+        File file = File.createTempFile("timetable", ".trtt");
+        file.deleteOnExit();
+        TimetableFile.write(TestTimetables.expressAndSlowTrain(), file);
+
+        assertPlannable(TimetableFile.map(file));
+    }
+
+    @Test
+    public void mapsTimetableInsideLargerFile() throws Exception {
+        byte[] timetable = toBytes(TestTimetables.expressAndSlowTrain().getBuffer());
+        File file = File.createTempFile("bundle", ".bin");
+        file.deleteOnExit();
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(new byte[100]);
+            outputStream.write(timetable);
+            outputStream.write(new byte[37]);
+        }
+
+        try (RandomAccessFile bundle = new RandomAccessFile(file, "r")) {
+            assertPlannable(TimetableFile.map(bundle.getChannel(), 100, timetable.length));
+        }
+    }
+
+    @Test
+    public void rejectsSectionOffsetInsideHeader() {
+        assertRejected(16 + 8 * TimetableFile.STATION_NAME, 0, "Invalid timetable section");
+    }
+
+    @Test
+    public void rejectsNegativeSectionOffset() {
+        assertRejected(16 + 8 * TimetableFile.STATION_NAME, -8, "Invalid timetable section");
+    }
+
+    @Test
+    public void rejectsNegativeSectionLength() {
+        assertRejected(20 + 8 * TimetableFile.STATION_NAME, -4, "Invalid timetable section");
+    }
+
+    @Test
+    public void rejectsSectionPastEnd() {
+        assertRejected(20 + 8 * TimetableFile.STATION_NAME, 1 << 20, "Truncated timetable section");
+    }
+
+    private static void assertPlannable(TimetableStore store) {
+        assertEquals(3, store.getStationCount());
+        assertEquals(2, store.getTrainCount());
+        int target = store.stationId("C");
+        assertEquals(700, new ConnectionScanner(store).scan(store.stationId("A"), target, 540, 1, 0)
+            .getEarliestArrival(target));
+    }
+
+    // Overwrites one header int of a valid timetable and expects validation to fail
+    private static void assertRejected(int headerPosition, int value, String message) {
+        byte[] bytes = toBytes(TestTimetables.expressAndSlowTrain().getBuffer());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(TimetableFile.ORDER);
+        buffer.putInt(headerPosition, value);
+        try {
+            new TimetableStore(buffer);
+            fail("Accepted a corrupt header");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
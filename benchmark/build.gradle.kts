@@ -0,0 +1,47 @@
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+// The journey engine is compiled straight from the app sources. The few
+// Android, Firebase and TFLite types it touches are replaced by no-op host
+// shims in src/main/java, so delay, facility and reliability data are empty
+// and inference is not measured.
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include("com/ghosh/trainrot/features/journey/**")
+            exclude("com/ghosh/trainrot/features/journey/JourneyHistoryAdapter.java")
+            include("android/**")
+            include("com/google/firebase/**")
+            include("org/tensorflow/**")
+        }
+    }
+}
+
+dependencies {
+    implementation(libs.commons.math3)
+    implementation(libs.javax.inject)
+}
+
+// ./gradlew :benchmark:jmh [-Pjmh.includes=<regex>]
+// Reports throughput and sampled latency percentiles, with allocation rate
+// from the GC profiler; results go to build/results/jmh/results.json
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    (findProperty("jmh.includes") as String?)?.let { includes.set(listOf(it)) }
+    benchmarkMode.set(listOf("thrpt", "sample"))
+    timeUnit.set("ms")
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    jvmArgs.set(listOf("-Xmx2g"))
+}
@@ -0,0 +1,94 @@
+package com.ghosh.trainrot.features.journey;
+
+import android.content.Context;
+import java.util.Random;
+import org.openjdk.jmh.annotations.*;
+
+// Delay inference over trains with full histories; the interpreter shim does
+// no work, so this measures input preparation and what it allocates.
+// predictDelay and predictDelays repeat TRAINS trains, which all fit in the
+// prediction cache, so once warm they measure cache hits. Predictions are
+// cached per train, so the cold variants cycle through COLD_TRAINS other
+// trains, four times what the cache holds, and each has been pushed out
+// before it comes round again.
+@State(Scope.Benchmark)
+public class DelayPredictorBenchmark {
+    private static final int TRAINS = 512;
+    private static final int STATIONS = 256;
+    private static final int HISTORY = 24;
+    private static final int COLD_TRAINS = 32768;
+    private static final int BATCH = 48;
+
+    private DelayPredictor predictor;
+    private int[] trainIds;
+    private int[] stationIds;
+    private int[] coldTrainIds;
+    private int[] coldStationIds;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+        int nextCold;
+        final int[] batchTrains = new int[BATCH];
+        final int[] batchStations = new int[BATCH];
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        predictor = new DelayPredictor(new Context());
+        Random random = new Random(SyntheticNetwork.SEED);
+        trainIds = new int[TRAINS];
+        stationIds = new int[TRAINS];
+        addTrains(random, 10000, trainIds, stationIds);
+        coldTrainIds = new int[COLD_TRAINS];
+        coldStationIds = new int[COLD_TRAINS];
+        addTrains(random, 100000, coldTrainIds, coldStationIds);
+    }
+
+    // Trains numbered from firstNumber, each with a full history at one station
+    private void addTrains(Random random, int firstNumber, int[] trains, int[] stations) {
+        for (int i = 0; i < trains.length; i++) {
+            String train = "B" + (firstNumber + i);
+            String station = "S" + random.nextInt(STATIONS);
+            for (int r = 0; r < HISTORY; r++) {
+                predictor.recordDelay(train, station, random.nextInt(90), random.nextBoolean(),
+                    random.nextInt(20) == 0, random.nextFloat(), random.nextFloat(),
+                    random.nextInt(10) == 0, random.nextInt(4) == 0, random.nextInt(30) == 0);
+            }
+            trains[i] = IdDictionary.TRAINS.find(train);
+            stations[i] = IdDictionary.STATIONS.intern(station);
+        }
+    }
+
+    @Benchmark
+    public int predictDelay(Cursor cursor) {
+        int i = cursor.next++ % TRAINS;
+        return predictor.predictDelay(trainIds[i], stationIds[i]);
+    }
+
+    @Benchmark
+    public int[] predictDelays(Cursor cursor) {
+        for (int r = 0; r < BATCH; r++) {
+            int i = cursor.next++ % TRAINS;
+            cursor.batchTrains[r] = trainIds[i];
+            cursor.batchStations[r] = stationIds[i];
+        }
+        return predictor.predictDelays(cursor.batchTrains, cursor.batchStations);
+    }
+
+    @Benchmark
+    public int predictDelayCold(Cursor cursor) {
+        int i = cursor.nextCold++ % COLD_TRAINS;
+        return predictor.predictDelay(coldTrainIds[i], coldStationIds[i]);
+    }
+
+    @Benchmark
+    public int[] predictDelaysCold(Cursor cursor) {
+        for (int r = 0; r < BATCH; r++) {
+            int i = cursor.nextCold++ % COLD_TRAINS;
+            cursor.batchTrains[r] = coldTrainIds[i];
+            cursor.batchStations[r] = coldStationIds[i];
+        }
+        return predictor.predictDelays(cursor.batchTrains, cursor.batchStations);
+    }
+}
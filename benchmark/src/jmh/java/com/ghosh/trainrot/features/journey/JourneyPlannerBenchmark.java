@@ -0,0 +1,74 @@
+package com.ghosh.trainrot.features.journey;
+
+import android.content.Context;
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.annotations.*;
+
+// End-to-end planJourney per optimization mode: search with the preference
+// filters, ranking, split ticketing for LOWEST_COST and delay annotation.
+// Queries cycle through more entries than the route cache holds, so every
+// call misses the cache.
+@State(Scope.Benchmark)
+public class JourneyPlannerBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"MINIMUM_DURATION", "LOWEST_COST", "COMFORT"})
+    public JourneyPlanner.OptimizationMode mode;
+
+    // NONE accepts every class; FILTERED keeps sleeper and AC three tier
+    // trains, with the luggage buffer and a tighter transfer window
+    @Param({"NONE", "FILTERED"})
+    public String filters;
+
+    private String[] sources;
+    private String[] destinations;
+    private int[] departureTimes;
+    private JourneyPlanner planner;
+    private JourneyPlanner.JourneyPreferences preferences;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticNetwork network = SyntheticNetwork.generate();
+        SyntheticNetwork.Query[] queries = network.queries(QUERIES, SyntheticNetwork.SEED + 2);
+        sources = new String[QUERIES];
+        destinations = new String[QUERIES];
+        departureTimes = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            sources[i] = SyntheticNetwork.stationCode(queries[i].source);
+            destinations[i] = SyntheticNetwork.stationCode(queries[i].target);
+            departureTimes[i] = queries[i].departureTime;
+        }
+
+        Context context = new Context();
+        planner = new JourneyPlanner(new DelayPredictor(context),
+            new StationFacilityAnalyzer(context), new HistoricalDataAnalyzer(context));
+        planner.loadTimetable(network.getStore());
+
+        preferences = new JourneyPlanner.JourneyPreferences();
+        if ("FILTERED".equals(filters)) {
+            preferences.setPreferredTrainClasses(Arrays.asList("SL", "3A"));
+            preferences.setIncludeLuggageBuffer(true);
+            preferences.setMaxTransferTime(90);
+        } else {
+            preferences.setIncludeLuggageBuffer(false);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clearCache() {
+        planner.getRouteCache().clear();
+    }
+
+    @Benchmark
+    public List<JourneyPlanner.JourneyRoute> planJourney(Cursor cursor) {
+        int i = cursor.next++ % QUERIES;
+        return planner.planJourney(sources[i], destinations[i], departureTimes[i], mode,
+            preferences);
+    }
+}
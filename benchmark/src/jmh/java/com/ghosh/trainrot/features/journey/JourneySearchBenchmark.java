@@ -0,0 +1,62 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.List;
+import org.openjdk.jmh.annotations.*;
+
+// Raw searches over the synthetic network, without materializing legs
+@State(Scope.Benchmark)
+public class JourneySearchBenchmark {
+    private static final int QUERIES = 1024;
+    private static final int MAX_LEGS = 3;
+    private static final int MIN_TRANSFER_TIME = 15;
+    private static final int ISOCHRONE_HOURS = 8;
+
+    private SyntheticNetwork.Query[] queries;
+    private RaptorPlanner raptorPlanner;
+    private RaptorPlanner goalDirectedPlanner;
+    private ConnectionScanner connectionScanner;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticNetwork network = SyntheticNetwork.generate();
+        queries = network.queries(QUERIES, SyntheticNetwork.SEED + 1);
+        raptorPlanner = new RaptorPlanner(network.getStore());
+        goalDirectedPlanner = new RaptorPlanner(network.getStore());
+        goalDirectedPlanner.setGoalDirected(true);
+        connectionScanner = new ConnectionScanner(network.getStore());
+    }
+
+    @Benchmark
+    public List<ConnectionScanner.Journey> raptor(Cursor cursor) {
+        SyntheticNetwork.Query query = queries[cursor.next++ % QUERIES];
+        return raptorPlanner.findParetoJourneys(query.source, query.target,
+            query.departureTime, MAX_LEGS, MIN_TRANSFER_TIME);
+    }
+
+    @Benchmark
+    public List<ConnectionScanner.Journey> raptorGoalDirected(Cursor cursor) {
+        SyntheticNetwork.Query query = queries[cursor.next++ % QUERIES];
+        return goalDirectedPlanner.findParetoJourneys(query.source, query.target,
+            query.departureTime, MAX_LEGS, MIN_TRANSFER_TIME);
+    }
+
+    @Benchmark
+    public List<ConnectionScanner.Journey> connectionScan(Cursor cursor) {
+        SyntheticNetwork.Query query = queries[cursor.next++ % QUERIES];
+        return connectionScanner.scan(query.source, query.target, query.departureTime,
+            MAX_LEGS, MIN_TRANSFER_TIME).getJourneys(query.target);
+    }
+
+    @Benchmark
+    public ConnectionScanner.ScanResult isochrone(Cursor cursor) {
+        SyntheticNetwork.Query query = queries[cursor.next++ % QUERIES];
+        return connectionScanner.scan(query.source, -1, query.departureTime,
+            query.departureTime + ISOCHRONE_HOURS * 60, MAX_LEGS,
+            SearchConstraints.withMinTransfer(MIN_TRANSFER_TIME));
+    }
+}
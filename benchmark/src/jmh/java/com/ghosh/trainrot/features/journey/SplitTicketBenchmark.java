@@ -0,0 +1,48 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.SplittableRandom;
+import org.openjdk.jmh.annotations.*;
+
+// Split-ticket DP on single-train rides of at least two stops. The optimizer
+// is recreated per iteration, so each iteration starts with cold fare rows.
+@State(Scope.Benchmark)
+public class SplitTicketBenchmark {
+    private static final int RIDES = 4096;
+
+    private TimetableStore store;
+    private int[] boardStops;
+    private int[] alightStops;
+    private SplitTicketOptimizer optimizer;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = SyntheticNetwork.generate().getStore();
+        SplittableRandom random = new SplittableRandom(SyntheticNetwork.SEED + 3);
+        boardStops = new int[RIDES];
+        alightStops = new int[RIDES];
+        for (int i = 0; i < RIDES; i++) {
+            int train = random.nextInt(store.getTrainCount());
+            int stops = store.getStopCount(train);
+            int board = random.nextInt(stops - 2);
+            int alight = board + 2 + random.nextInt(stops - board - 2);
+            boardStops[i] = store.getFirstStop(train) + board;
+            alightStops[i] = store.getFirstStop(train) + alight;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void newOptimizer() {
+        optimizer = new SplitTicketOptimizer(store, SegmentFares.TIMETABLE);
+    }
+
+    @Benchmark
+    public int[] cheapestSplit(Cursor cursor) {
+        int i = cursor.next++ % RIDES;
+        return optimizer.cheapestSplit(boardStops[i], alightStops[i]);
+    }
+}
@@ -0,0 +1,210 @@
+package com.ghosh.trainrot.features.journey;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Deterministic network at Indian Railways scale. Stations sit on a square
+// grid and a few of them are junctions; each line walks between neighbouring
+// stations from a random origin through a chain of junctions, so lines cross
+// and share trunk corridors the way real ones do. Every line is run by trains
+// in both directions spread over the day, with the same running times per
+// direction so that trips never overtake.
+final class SyntheticNetwork {
+    static final int STATIONS = 7000;
+    static final int TRAINS = 13000;
+    static final long SEED = 20240601L;
+
+    private static final int GRID = (int) Math.ceil(Math.sqrt(STATIONS));
+    private static final int TRAINS_PER_LINE = 20; // half in each direction
+    private static final int MIN_LINE_STOPS = 8;
+    private static final int MAX_LINE_STOPS = 60;
+    private static final int JUNCTIONS = 32;
+    private static final int DWELL_MINUTES = 2;
+    private static final String[] CLASSES = {"1A", "2A", "3A", "SL", "CC"};
+    private static final int[] PAISE_PER_MINUTE = {350, 210, 150, 55, 120};
+    private static final int[][] HEADINGS = {
+        {1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}
+    };
+
+    private final TimetableStore store;
+    private final int[] servedStations;
+
+    private SyntheticNetwork(TimetableStore store, int[] servedStations) {
+        this.store = store;
+        this.servedStations = servedStations;
+    }
+
+    static SyntheticNetwork generate() {
+        return generate(SEED);
+    }
+
+    static SyntheticNetwork generate(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        TimetableStore.Builder builder = new TimetableStore.Builder();
+        for (int station = 0; station < STATIONS; station++) {
+            builder.addStation(stationCode(station), "Station " + station);
+        }
+
+        int[] junctions = new int[JUNCTIONS];
+        for (int i = 0; i < JUNCTIONS; i++) {
+            junctions[i] = random.nextInt(STATIONS);
+        }
+
+        boolean[] served = new boolean[STATIONS];
+        int lines = TRAINS / TRAINS_PER_LINE;
+        int train = 0;
+        for (int line = 0; line < lines; line++) {
+            int[] stops;
+            do {
+                stops = walk(random, junctions);
+            } while (stops.length < MIN_LINE_STOPS);
+            int[] runMinutes = new int[stops.length - 1];
+            for (int i = 0; i < runMinutes.length; i++) {
+                runMinutes[i] = 4 + random.nextInt(27);
+            }
+            for (int stop : stops) {
+                served[stop] = true;
+            }
+
+            for (int direction = 0; direction < 2; direction++) {
+                int departure = random.nextInt(90);
+                for (int run = 0; run < TRAINS_PER_LINE / 2; run++, train++) {
+                    int trainClass = random.nextInt(CLASSES.length);
+                    int id = builder.addTrain(String.valueOf(10000 + train),
+                        "Line " + line + " Express " + run, CLASSES[trainClass]);
+                    addStopTimes(builder, id, stops, runMinutes, direction == 1, departure,
+                        PAISE_PER_MINUTE[trainClass], random);
+                    departure += 60 + random.nextInt(60);
+                }
+            }
+        }
+
+        int servedCount = 0;
+        int[] servedStations = new int[STATIONS];
+        for (int station = 0; station < STATIONS; station++) {
+            if (served[station]) {
+                servedStations[servedCount++] = station;
+            }
+        }
+        return new SyntheticNetwork(builder.build(), Arrays.copyOf(servedStations, servedCount));
+    }
+
+    TimetableStore getStore() {
+        return store;
+    }
+
+    static String stationCode(int station) {
+        return String.format("S%04d", station);
+    }
+
+    // Origin, destination and departure time between two served stations
+    Query[] queries(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Query[] queries = new Query[count];
+        for (int i = 0; i < count; i++) {
+            int source = servedStations[random.nextInt(servedStations.length)];
+            int target;
+            do {
+                target = servedStations[random.nextInt(servedStations.length)];
+            } while (target == source);
+            queries[i] = new Query(source, target, 300 + random.nextInt(420));
+        }
+        return queries;
+    }
+
+    // Heads for one junction after another, sometimes straying a step
+    // sideways; may end early when boxed in by the grid edge or itself
+    private static int[] walk(SplittableRandom random, int[] junctions) {
+        int length = MIN_LINE_STOPS + random.nextInt(MAX_LINE_STOPS - MIN_LINE_STOPS + 1);
+        int[] stops = new int[length];
+        boolean[] visited = new boolean[STATIONS];
+        int current = random.nextInt(STATIONS);
+        int target = junctions[random.nextInt(junctions.length)];
+        stops[0] = current;
+        visited[current] = true;
+
+        int count = 1;
+        while (count < length) {
+            while (target == current) {
+                target = junctions[random.nextInt(junctions.length)];
+            }
+            int heading = headingTowards(current, target);
+            int turn = random.nextInt(5);
+            if (turn == 0) {
+                heading = (heading + 1) % HEADINGS.length;
+            } else if (turn == 1) {
+                heading = (heading + HEADINGS.length - 1) % HEADINGS.length;
+            }
+            int next = -1;
+            for (int attempt = 0; attempt < HEADINGS.length && next < 0; attempt++) {
+                // Nearest headings first: 0, +1, -1, +2, -2, ...
+                int offset = (attempt + 1) / 2 * (attempt % 2 == 1 ? 1 : -1);
+                int candidate = step(current,
+                    HEADINGS[(heading + offset + HEADINGS.length) % HEADINGS.length]);
+                if (candidate >= 0 && !visited[candidate]) {
+                    next = candidate;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            stops[count++] = next;
+            visited[next] = true;
+            current = next;
+        }
+        return Arrays.copyOf(stops, count);
+    }
+
+    private static int headingTowards(int station, int target) {
+        int dx = Integer.signum(target % GRID - station % GRID);
+        int dy = Integer.signum(target / GRID - station / GRID);
+        for (int h = 0; h < HEADINGS.length; h++) {
+            if (HEADINGS[h][0] == dx && HEADINGS[h][1] == dy) {
+                return h;
+            }
+        }
+        return 0;
+    }
+
+    private static int step(int station, int[] heading) {
+        int x = station % GRID + heading[0];
+        int y = station / GRID + heading[1];
+        if (x < 0 || y < 0 || x >= GRID) {
+            return -1;
+        }
+        int next = y * GRID + x;
+        return next < STATIONS ? next : -1;
+    }
+
+    private static void addStopTimes(TimetableStore.Builder builder, int train, int[] stops,
+                                     int[] runMinutes, boolean reverse, int departure,
+                                     int paisePerMinute, SplittableRandom random) {
+        int time = departure;
+        int fare = 0;
+        for (int i = 0; i < stops.length; i++) {
+            int position = reverse ? stops.length - 1 - i : i;
+            boolean terminal = i == 0 || i == stops.length - 1;
+            int arrival = time;
+            int leave = terminal ? time : time + DWELL_MINUTES;
+            builder.addStopTime(train, stops[position], arrival, leave,
+                String.valueOf(1 + random.nextInt(8)), fare);
+            if (i < stops.length - 1) {
+                int run = runMinutes[reverse ? position - 1 : position];
+                time = leave + run;
+                fare += run * paisePerMinute;
+            }
+        }
+    }
+
+    static final class Query {
+        final int source;
+        final int target;
+        final int departureTime;
+
+        Query(int source, int target, int departureTime) {
+            this.source = source;
+            this.target = target;
+            this.departureTime = departureTime;
+        }
+    }
+}
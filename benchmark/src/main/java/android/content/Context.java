@@ -0,0 +1,12 @@
+package android.content;
+
+import android.content.res.AssetManager;
+
+// Host shim of the part of Context the journey engine uses
+public class Context {
+    private final AssetManager assets = new AssetManager();
+
+    public AssetManager getAssets() {
+        return assets;
+    }
+}
@@ -0,0 +1,27 @@
+package android.content.res;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+// Host shim over a whole local file
+public class AssetFileDescriptor {
+    private final RandomAccessFile file;
+
+    AssetFileDescriptor(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+    }
+
+    public FileDescriptor getFileDescriptor() throws IOException {
+        return file.getFD();
+    }
+
+    public long getStartOffset() {
+        return 0;
+    }
+
+    public long getDeclaredLength() throws IOException {
+        return file.length();
+    }
+}
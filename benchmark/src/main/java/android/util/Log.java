@@ -0,0 +1,23 @@
+package android.util;
+
+// Host shim: log lines go to standard error
+public final class Log {
+    private Log() {
+    }
+
+    public static int i(String tag, String message) {
+        System.err.println("I/" + tag + ": " + message);
+        return 0;
+    }
+
+    public static int w(String tag, String message) {
+        System.err.println("W/" + tag + ": " + message);
+        return 0;
+    }
+
+    public static int e(String tag, String message, Throwable error) {
+        System.err.println("E/" + tag + ": " + message);
+        error.printStackTrace();
+        return 0;
+    }
+}
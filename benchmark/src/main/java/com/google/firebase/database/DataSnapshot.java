@@ -0,0 +1,17 @@
+package com.google.firebase.database;
+
+import java.util.Collections;
+
+public class DataSnapshot {
+    public String getKey() {
+        return null;
+    }
+
+    public Iterable<DataSnapshot> getChildren() {
+        return Collections.emptyList();
+    }
+
+    public <T> T getValue(Class<T> valueType) {
+        return null;
+    }
+}
@@ -0,0 +1,4 @@
+package com.google.firebase.database;
+
+public class DatabaseError {
+}
@@ -0,0 +1,14 @@
+package com.google.firebase.database;
+
+// Host shim: references accept writes and listeners but never deliver data
+public class FirebaseDatabase {
+    private static final FirebaseDatabase INSTANCE = new FirebaseDatabase();
+
+    public static FirebaseDatabase getInstance() {
+        return INSTANCE;
+    }
+
+    public DatabaseReference getReference(String path) {
+        return new DatabaseReference();
+    }
+}
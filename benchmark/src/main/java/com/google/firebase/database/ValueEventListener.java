@@ -0,0 +1,7 @@
+package com.google.firebase.database;
+
+public interface ValueEventListener {
+    void onDataChange(DataSnapshot snapshot);
+
+    void onCancelled(DatabaseError error);
+}
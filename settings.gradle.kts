@@ -21,4 +21,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "Train Rot"
 include(":app")
+include(":tools")
+include(":benchmark")
  
\ No newline at end of file
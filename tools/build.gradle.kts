@@ -0,0 +1,25 @@
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+// The timetable format classes are plain Java, so they are compiled straight
+// from the app sources instead of being duplicated here
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include("com/ghosh/trainrot/features/journey/Timetable*.java")
+            include("com/ghosh/trainrot/tools/**")
+        }
+    }
+}
+
+application {
+    mainClass.set("com.ghosh.trainrot.tools.TimetableImporter")
+    applicationDefaultJvmArgs = listOf("-Xmx2g")
+}
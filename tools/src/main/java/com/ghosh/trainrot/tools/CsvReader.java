@@ -0,0 +1,229 @@
+package com.ghosh.trainrot.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Byte-level CSV reader over one chunk of a file. A chunk owns every line that
+// starts inside [start, end), so chunks of the same file can be read in
+// parallel without splitting or duplicating lines.
+final class CsvReader implements Closeable {
+    private final InputStream input;
+    private final long end;
+    private long position;
+
+    // Unsynchronized read buffer; BufferedInputStream locks on every byte
+    private final byte[] buffer = new byte[1 << 16];
+    private int bufferPosition;
+    private int bufferLimit;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+    private int fieldCount;
+
+    CsvReader(File file, long start, long end) throws IOException {
+        FileInputStream fileInput = new FileInputStream(file);
+        this.input = fileInput;
+        this.end = end;
+        if (start > 0) {
+            // Resume after the line that straddles the chunk boundary
+            fileInput.getChannel().position(start - 1);
+            this.position = start - 1;
+            int b;
+            while ((b = read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    break;
+                }
+            }
+        }
+    }
+
+    static CsvReader open(File file) throws IOException {
+        return new CsvReader(file, 0, file.length());
+    }
+
+    // Chunk boundaries splitting the file into roughly equal byte ranges
+    static long[] chunks(File file, int count) {
+        long length = file.length();
+        long[] bounds = new long[count + 1];
+        for (int i = 0; i <= count; i++) {
+            bounds[i] = length * i / count;
+        }
+        return bounds;
+    }
+
+    boolean next() throws IOException {
+        if (position >= end) {
+            return false;
+        }
+        lineLength = 0;
+        int b;
+        boolean read = false;
+        while ((b = read()) != -1) {
+            read = true;
+            position++;
+            if (b == '\n') {
+                break;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = (byte) b;
+        }
+        if (!read) {
+            return false;
+        }
+        if (lineLength > 0 && line[lineLength - 1] == '\r') {
+            lineLength--;
+        }
+        split();
+        return true;
+    }
+
+    private int read() throws IOException {
+        if (bufferPosition == bufferLimit) {
+            bufferLimit = input.read(buffer);
+            bufferPosition = 0;
+            if (bufferLimit <= 0) {
+                bufferLimit = 0;
+                return -1;
+            }
+        }
+        return buffer[bufferPosition++] & 0xFF;
+    }
+
+    private void split() {
+        fieldCount = 0;
+        int i = 0;
+        while (i <= lineLength) {
+            if (fieldCount == fieldStart.length) {
+                fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+                fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+            }
+            int start = i;
+            if (i < lineLength && line[i] == '"') {
+                i++;
+                while (i < lineLength) {
+                    if (line[i] != '"') {
+                        i++;
+                    } else if (i + 1 < lineLength && line[i + 1] == '"') {
+                        i += 2;
+                    } else {
+                        i++;
+                        break;
+                    }
+                }
+            }
+            while (i < lineLength && line[i] != ',') {
+                i++;
+            }
+            fieldStart[fieldCount] = start;
+            fieldEnd[fieldCount] = i;
+            fieldCount++;
+            i++;
+        }
+    }
+
+    boolean isBlank() {
+        return lineLength == 0;
+    }
+
+    int fieldCount() {
+        return fieldCount;
+    }
+
+    String field(int index) {
+        if (index < 0 || index >= fieldCount) {
+            return null;
+        }
+        int start = fieldStart[index];
+        int stop = fieldEnd[index];
+        if (stop - start >= 2 && line[start] == '"' && line[stop - 1] == '"') {
+            String quoted = new String(line, start + 1, stop - start - 2, StandardCharsets.UTF_8);
+            return quoted.replace("\"\"", "\"");
+        }
+        return new String(line, start, stop - start, StandardCharsets.UTF_8).trim();
+    }
+
+    int intField(int index, int missing) {
+        if (index < 0 || index >= fieldCount) {
+            return missing;
+        }
+        int value = 0;
+        boolean digits = false;
+        for (int i = fieldStart[index]; i < fieldEnd[index]; i++) {
+            byte b = line[i];
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                digits = true;
+            } else if (b != ' ' && b != '"') {
+                break;
+            }
+        }
+        return digits ? value : missing;
+    }
+
+    // GTFS "H:MM:SS" as minutes since the start of the service day; hours may exceed 24
+    int minutesField(int index, int missing) {
+        if (index < 0 || index >= fieldCount) {
+            return missing;
+        }
+        int hours = 0;
+        int minutes = 0;
+        int part = 0;
+        boolean digits = false;
+        for (int i = fieldStart[index]; i < fieldEnd[index]; i++) {
+            byte b = line[i];
+            if (b == ':') {
+                part++;
+            } else if (b >= '0' && b <= '9') {
+                digits = true;
+                if (part == 0) {
+                    hours = hours * 10 + (b - '0');
+                } else if (part == 1) {
+                    minutes = minutes * 10 + (b - '0');
+                }
+            }
+        }
+        return digits ? hours * 60 + minutes : missing;
+    }
+
+    // Decimal rupees as integer paise
+    int paiseField(int index) {
+        if (index < 0 || index >= fieldCount) {
+            return 0;
+        }
+        long rupees = 0;
+        int paise = 0;
+        int fractionDigits = -1;
+        for (int i = fieldStart[index]; i < fieldEnd[index]; i++) {
+            byte b = line[i];
+            if (b == '.') {
+                fractionDigits = 0;
+            } else if (b >= '0' && b <= '9') {
+                if (fractionDigits < 0) {
+                    rupees = rupees * 10 + (b - '0');
+                } else if (fractionDigits < 2) {
+                    paise = paise * 10 + (b - '0');
+                    fractionDigits++;
+                }
+            }
+        }
+        if (fractionDigits == 1) {
+            paise *= 10;
+        }
+        return (int) (rupees * 100 + paise);
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
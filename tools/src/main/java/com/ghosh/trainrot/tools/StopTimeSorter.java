@@ -0,0 +1,166 @@
+package com.ghosh.trainrot.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+// External merge sort of stop time records by (train, sequence). Workers fill
+// bounded in-memory runs that are sorted and spilled to temp files; the runs
+// are then k-way merged into a single ordered stream.
+final class StopTimeSorter {
+    static final int TRAIN = 0;
+    static final int SEQUENCE = 1;
+    static final int STATION = 2;
+    static final int ARRIVAL = 3;
+    static final int DEPARTURE = 4;
+    static final int PLATFORM = 5;
+    static final int FARE = 6;
+    static final int FIELDS = 7;
+
+    static final int MAX_RUN_SIZE = 1 << 20;
+    private static final int MAX_TRAINS = 1 << 23;
+    private static final int MAX_SEQUENCE = 1 << 20;
+
+    private final File tempDirectory;
+    private final int runSize;
+    private final List<File> runs = Collections.synchronizedList(new ArrayList<>());
+
+    StopTimeSorter(File tempDirectory, int runSize) {
+        if (runSize <= 0 || runSize > MAX_RUN_SIZE) {
+            throw new IllegalArgumentException("Run size must be in 1.." + MAX_RUN_SIZE);
+        }
+        this.tempDirectory = tempDirectory;
+        this.runSize = runSize;
+    }
+
+    Run newRun() {
+        return new Run();
+    }
+
+    int getRunCount() {
+        return runs.size();
+    }
+
+    void merge(RecordSink sink) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(
+            Comparator.comparingLong(reader -> reader.key));
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.advance()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                sink.accept(reader.record);
+                if (reader.advance()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        } finally {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+            for (File run : runs) {
+                run.delete();
+            }
+            runs.clear();
+        }
+    }
+
+    interface RecordSink {
+        void accept(int[] record) throws IOException;
+    }
+
+    // Per-worker buffer; not thread-safe
+    final class Run {
+        private final int[] records = new int[runSize * FIELDS];
+        private int count;
+
+        void add(int train, int sequence, int station, int arrival, int departure,
+                 int platform, int farePaise) throws IOException {
+            if (train >= MAX_TRAINS || sequence < 0 || sequence >= MAX_SEQUENCE) {
+                throw new IllegalArgumentException("Stop time out of range: train "
+                    + train + ", sequence " + sequence);
+            }
+            int base = count * FIELDS;
+            records[base + TRAIN] = train;
+            records[base + SEQUENCE] = sequence;
+            records[base + STATION] = station;
+            records[base + ARRIVAL] = arrival;
+            records[base + DEPARTURE] = departure;
+            records[base + PLATFORM] = platform;
+            records[base + FARE] = farePaise;
+            if (++count == runSize) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = (key(records, i * FIELDS) << 20) | i;
+            }
+            Arrays.sort(keys);
+
+            File file = File.createTempFile("stop_times", ".run", tempDirectory);
+            file.deleteOnExit();
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file), 1 << 20))) {
+                for (long key : keys) {
+                    int base = (int) (key & (MAX_RUN_SIZE - 1)) * FIELDS;
+                    for (int f = 0; f < FIELDS; f++) {
+                        output.writeInt(records[base + f]);
+                    }
+                }
+            }
+            runs.add(file);
+            count = 0;
+        }
+    }
+
+    private static long key(int[] records, int base) {
+        return ((long) records[base + TRAIN] << 20) | records[base + SEQUENCE];
+    }
+
+    private static final class RunReader {
+        private final DataInputStream input;
+        final int[] record = new int[FIELDS];
+        long key;
+
+        RunReader(File file) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        }
+
+        boolean advance() throws IOException {
+            try {
+                for (int f = 0; f < FIELDS; f++) {
+                    record[f] = input.readInt();
+                }
+            } catch (EOFException e) {
+                return false;
+            }
+            key = key(record, 0);
+            return true;
+        }
+
+        void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.ghosh.trainrot.tools;
+
+import com.ghosh.trainrot.features.journey.TimetableFile;
+import com.ghosh.trainrot.features.journey.TimetableStore;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Compiles a GTFS-like dump (stops.txt, routes.txt, trips.txt, stop_times.txt)
+// into the planner's binary timetable. stop_times.txt is parsed in parallel
+// chunks and sorted externally, so its size is bounded by disk, not heap.
+//
+// Usage: TimetableImporter <gtfs-directory> <output-file> [--threads N] [--run-size N]
+public final class TimetableImporter {
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final File directory;
+    private final int threads;
+    private final int runSize;
+
+    private final TimetableStore.Builder builder = new TimetableStore.Builder();
+    private final Map<String, Integer> stationsByStopId = new HashMap<>();
+    private final Map<String, Integer> trainsByTripId = new HashMap<>();
+    private final Map<String, Integer> platformIds = new ConcurrentHashMap<>();
+    private final List<String> platforms = new CopyOnWriteArrayList<>();
+    private final AtomicInteger skippedStopTimes = new AtomicInteger();
+
+    public TimetableImporter(File directory, int threads, int runSize) {
+        this.directory = directory;
+        this.threads = threads;
+        this.runSize = runSize;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: TimetableImporter <gtfs-directory> <output-file>"
+                + " [--threads N] [--run-size N]");
+            System.exit(2);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        int runSize = StopTimeSorter.MAX_RUN_SIZE;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--run-size")) {
+                runSize = Integer.parseInt(args[i + 1]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        long start = System.nanoTime();
+        TimetableImporter importer = new TimetableImporter(new File(args[0]), threads, runSize);
+        TimetableStore store = importer.run();
+        TimetableFile.write(store, new File(args[1]));
+        System.out.printf(Locale.ROOT, "Wrote %d stations, %d trains, %d stop times in %d ms%n",
+            store.getStationCount(), store.getTrainCount(), store.getStopTimeCount(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    public TimetableStore run() throws IOException, InterruptedException {
+        readStops(new File(directory, "stops.txt"));
+        readTrips(new File(directory, "trips.txt"), readRouteNames(new File(directory, "routes.txt")));
+
+        StopTimeSorter sorter = new StopTimeSorter(null, runSize);
+        readStopTimes(new File(directory, "stop_times.txt"), sorter);
+        compileStopTimes(sorter);
+
+        if (skippedStopTimes.get() > 0) {
+            System.err.println("Skipped " + skippedStopTimes.get()
+                + " stop times with unknown trips or stops");
+        }
+        return builder.build();
+    }
+
+    private void readStops(File file) throws IOException {
+        try (CsvReader reader = CsvReader.open(file)) {
+            Map<String, Integer> columns = header(reader, file);
+            int stopId = required(columns, "stop_id", file);
+            int stopCode = columns.getOrDefault("stop_code", -1);
+            int stopName = columns.getOrDefault("stop_name", -1);
+            while (reader.next()) {
+                if (reader.isBlank()) {
+                    continue;
+                }
+                String id = reader.field(stopId);
+                String code = reader.field(stopCode);
+                int station = builder.addStation(code == null || code.isEmpty() ? id : code,
+                    reader.field(stopName));
+                stationsByStopId.put(id, station);
+            }
+        }
+    }
+
+    private Map<String, String> readRouteNames(File file) throws IOException {
+        Map<String, String> names = new HashMap<>();
+        if (!file.exists()) {
+            return names;
+        }
+        try (CsvReader reader = CsvReader.open(file)) {
+            Map<String, Integer> columns = header(reader, file);
+            int routeId = required(columns, "route_id", file);
+            int longName = columns.getOrDefault("route_long_name", -1);
+            int shortName = columns.getOrDefault("route_short_name", -1);
+            while (reader.next()) {
+                String name = reader.field(longName);
+                names.put(reader.field(routeId),
+                    name == null || name.isEmpty() ? reader.field(shortName) : name);
+            }
+        }
+        return names;
+    }
+
+    // The planner models a single service day, so only the first trip of each
+    // train number is kept
+    private void readTrips(File file, Map<String, String> routeNames) throws IOException {
+        Set<String> trainNumbers = new HashSet<>();
+        try (CsvReader reader = CsvReader.open(file)) {
+            Map<String, Integer> columns = header(reader, file);
+            int tripId = required(columns, "trip_id", file);
+            int routeId = columns.getOrDefault("route_id", -1);
+            int shortName = columns.getOrDefault("trip_short_name", -1);
+            int headsign = columns.getOrDefault("trip_headsign", -1);
+            int trainClass = columns.getOrDefault("train_class", -1);
+            while (reader.next()) {
+                if (reader.isBlank()) {
+                    continue;
+                }
+                String id = reader.field(tripId);
+                String number = reader.field(shortName);
+                if (number == null || number.isEmpty()) {
+                    number = id;
+                }
+                if (!trainNumbers.add(number)) {
+                    continue;
+                }
+                String name = routeNames.get(reader.field(routeId));
+                if (name == null || name.isEmpty()) {
+                    name = reader.field(headsign);
+                }
+                trainsByTripId.put(id, builder.addTrain(number, name, reader.field(trainClass)));
+            }
+        }
+    }
+
+    private void readStopTimes(File file, StopTimeSorter sorter)
+            throws IOException, InterruptedException {
+        Map<String, Integer> columns;
+        try (CsvReader reader = CsvReader.open(file)) {
+            columns = header(reader, file);
+        }
+        int tripId = required(columns, "trip_id", file);
+        int stopId = required(columns, "stop_id", file);
+        int sequence = required(columns, "stop_sequence", file);
+        int arrival = columns.getOrDefault("arrival_time", -1);
+        int departure = columns.getOrDefault("departure_time", -1);
+        int platform = columns.getOrDefault("platform_code", columns.getOrDefault("platform", -1));
+        int fare = columns.getOrDefault("fare", -1);
+
+        long[] chunks = CsvReader.chunks(file, threads * CHUNKS_PER_THREAD);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int c = 0; c + 1 < chunks.length; c++) {
+                long start = chunks[c];
+                long end = chunks[c + 1];
+                results.add(executor.submit(() -> {
+                    StopTimeSorter.Run run = sorter.newRun();
+                    try (CsvReader reader = new CsvReader(file, start, end)) {
+                        if (start == 0) {
+                            reader.next();
+                        }
+                        while (reader.next()) {
+                            if (reader.isBlank()) {
+                                continue;
+                            }
+                            Integer train = trainsByTripId.get(reader.field(tripId));
+                            Integer station = stationsByStopId.get(reader.field(stopId));
+                            if (train == null || station == null) {
+                                skippedStopTimes.incrementAndGet();
+                                continue;
+                            }
+                            int arrivalTime = reader.minutesField(arrival, -1);
+                            int departureTime = reader.minutesField(departure, arrivalTime);
+                            run.add(train, reader.intField(sequence, 0), station,
+                                arrivalTime < 0 ? departureTime : arrivalTime, departureTime,
+                                platformId(reader.field(platform)), reader.paiseField(fare));
+                        }
+                    }
+                    run.flush();
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Error parsing " + file, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Stop times arrive grouped by train in sequence order
+    private void compileStopTimes(StopTimeSorter sorter) throws IOException {
+        int[] previous = {-1, -1, -1};
+        sorter.merge(record -> {
+            int train = record[StopTimeSorter.TRAIN];
+            int sequence = record[StopTimeSorter.SEQUENCE];
+            if (train == previous[0] && sequence == previous[1]) {
+                return;
+            }
+            int arrival = record[StopTimeSorter.ARRIVAL];
+            int departure = record[StopTimeSorter.DEPARTURE];
+            if (arrival < 0) {
+                // Untimed stop: hold the train at the previous departure
+                arrival = train == previous[0] ? previous[2] : 0;
+                departure = arrival;
+            }
+            int platform = record[StopTimeSorter.PLATFORM];
+            builder.addStopTime(train, record[StopTimeSorter.STATION], arrival, departure,
+                platform < 0 ? null : platforms.get(platform), record[StopTimeSorter.FARE]);
+            previous[0] = train;
+            previous[1] = sequence;
+            previous[2] = departure;
+        });
+    }
+
+    private int platformId(String platform) {
+        if (platform == null || platform.isEmpty()) {
+            return -1;
+        }
+        Integer id = platformIds.get(platform);
+        if (id != null) {
+            return id;
+        }
+        synchronized (platforms) {
+            return platformIds.computeIfAbsent(platform, p -> {
+                platforms.add(p);
+                return platforms.size() - 1;
+            });
+        }
+    }
+
+    private static Map<String, Integer> header(CsvReader reader, File file) throws IOException {
+        if (!reader.next()) {
+            throw new IOException("Missing header in " + file);
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < reader.fieldCount(); i++) {
+            String name = reader.field(i);
+            // Strip a UTF-8 byte order mark from the first column
+            if (i == 0 && name.startsWith("\uFEFF")) {
+                name = name.substring(1);
+            }
+            columns.put(name, i);
+        }
+        return columns;
+    }
+
+    private static int required(Map<String, Integer> columns, String name, File file)
+            throws IOException {
+        Integer index = columns.get(name);
+        if (index == null) {
+            throw new IOException("Missing column " + name + " in " + file);
+        }
+        return index;
+    }
+}